@@ -0,0 +1,53 @@
+package dev.ayoangelo.databasemanager.benchmarks;
+
+import dev.ayoangelo.databasemanager.api.DatabaseAPI;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class EmbeddedDatabase {
+    public static final String DATABASE = "bench";
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private EmbeddedDatabase() {
+    }
+
+    /**
+     * Punta {@link DatabaseAPI} su un nuovo H2 in memoria in modalità MySQL e crea lo schema
+     * {@value #DATABASE}. Ogni chiamata usa un database diverso, così i trial non condividono dati.
+     */
+    public static void start(int poolSize) throws SQLException {
+        String url = "jdbc:h2:mem:bench" + counter.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        DatabaseAPI.configure(url, "sa", "", poolSize);
+        try (Connection conn = DatabaseAPI.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE SCHEMA IF NOT EXISTS `" + DATABASE + "`");
+        }
+    }
+
+    public static void fill(String tableName, int rows) throws SQLException {
+        DatabaseAPI.createTablesIfNotExist(DATABASE, tableName);
+        String sql = "INSERT INTO `" + DATABASE + "`.`" + tableName + "` (`key`, `value`) VALUES (?, ?)";
+        try (Connection conn = DatabaseAPI.getConnection(); var ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < rows; i++) {
+                ps.setString(1, key(i));
+                ps.setString(2, "{\"level\":" + i + ",\"name\":\"player-" + i + "\",\"coins\":" + (i * 7) + "}");
+                ps.addBatch();
+                if (i % 1000 == 999) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    public static String key(int index) {
+        return "player-" + index;
+    }
+
+    public static void stop() {
+        try (Connection conn = DatabaseAPI.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        } catch (SQLException ignored) {
+        }
+    }
+}
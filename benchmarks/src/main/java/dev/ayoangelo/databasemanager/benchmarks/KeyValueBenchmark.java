@@ -0,0 +1,61 @@
+package dev.ayoangelo.databasemanager.benchmarks;
+
+import dev.ayoangelo.databasemanager.api.DatabaseAPI;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyValueBenchmark {
+    private static final String TABLE = "profiles";
+    private static final int ROWS = 10_000;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        EmbeddedDatabase.start(8);
+        EmbeddedDatabase.fill(TABLE, ROWS);
+        for (int i = 0; i < 1_000; i++) {
+            DatabaseAPI.saveData(EmbeddedDatabase.DATABASE, TABLE, "profile-" + i, PlayerProfile.sample(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        EmbeddedDatabase.stop();
+    }
+
+    @Benchmark
+    public String getString() {
+        return DatabaseAPI.getString(EmbeddedDatabase.DATABASE, TABLE, EmbeddedDatabase.key(ThreadLocalRandom.current().nextInt(ROWS)));
+    }
+
+    @Benchmark
+    public boolean hasKey() {
+        return DatabaseAPI.hasKey(EmbeddedDatabase.DATABASE, TABLE, EmbeddedDatabase.key(ThreadLocalRandom.current().nextInt(ROWS * 2)));
+    }
+
+    @Benchmark
+    public void saveString() {
+        int index = ThreadLocalRandom.current().nextInt(ROWS);
+        DatabaseAPI.saveString(EmbeddedDatabase.DATABASE, TABLE, EmbeddedDatabase.key(index), "{\"level\":" + index + "}");
+    }
+
+    @Benchmark
+    public PlayerProfile saveAndGetData() {
+        int index = ThreadLocalRandom.current().nextInt(1_000);
+        DatabaseAPI.saveData(EmbeddedDatabase.DATABASE, TABLE, "profile-" + index, PlayerProfile.sample(index));
+        return DatabaseAPI.getData(PlayerProfile.class, EmbeddedDatabase.DATABASE, TABLE, "profile-" + index);
+    }
+
+    @Benchmark
+    public PlayerProfile getData() {
+        return DatabaseAPI.getData(PlayerProfile.class, EmbeddedDatabase.DATABASE, TABLE, "profile-" + ThreadLocalRandom.current().nextInt(1_000));
+    }
+}
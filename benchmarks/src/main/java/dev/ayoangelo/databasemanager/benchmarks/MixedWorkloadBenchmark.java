@@ -0,0 +1,49 @@
+package dev.ayoangelo.databasemanager.benchmarks;
+
+import dev.ayoangelo.databasemanager.api.DatabaseAPI;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class MixedWorkloadBenchmark {
+    private static final String TABLE = "mixed";
+    private static final int ROWS = 10_000;
+
+    @Param({"4", "8", "16", "32"})
+    public int poolSize;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        EmbeddedDatabase.start(poolSize);
+        EmbeddedDatabase.fill(TABLE, ROWS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        EmbeddedDatabase.stop();
+    }
+
+    @Benchmark
+    public void readMostly(Blackhole blackhole) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String key = EmbeddedDatabase.key(random.nextInt(ROWS));
+        int operation = random.nextInt(10);
+        if (operation < 6) {
+            blackhole.consume(DatabaseAPI.getString(EmbeddedDatabase.DATABASE, TABLE, key));
+        } else if (operation < 8) {
+            blackhole.consume(DatabaseAPI.hasKey(EmbeddedDatabase.DATABASE, TABLE, key));
+        } else {
+            DatabaseAPI.saveString(EmbeddedDatabase.DATABASE, TABLE, key, "{\"level\":" + operation + "}");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dev.ayoangelo.databasemanager.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class PlayerProfile {
+    public String name;
+    public int level;
+    public long coins;
+    public List<UUID> friends = new ArrayList<>();
+
+    public static PlayerProfile sample(int index) {
+        PlayerProfile profile = new PlayerProfile();
+        profile.name = "player-" + index;
+        profile.level = index % 100;
+        profile.coins = index * 7L;
+        for (int i = 0; i < 10; i++) {
+            profile.friends.add(new UUID(index, i));
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,46 @@
+package dev.ayoangelo.databasemanager.benchmarks;
+
+import dev.ayoangelo.databasemanager.api.DatabaseAPI;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TableScanBenchmark {
+    private static final String TABLE = "scan";
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        EmbeddedDatabase.start(4);
+        EmbeddedDatabase.fill(TABLE, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        EmbeddedDatabase.stop();
+    }
+
+    @Benchmark
+    public List<String> getTableKeys() {
+        return DatabaseAPI.getTableKeys(EmbeddedDatabase.DATABASE, TABLE);
+    }
+
+    @Benchmark
+    public void streamTableKeys(Blackhole blackhole) {
+        try (Stream<String> keys = DatabaseAPI.streamTableKeys(EmbeddedDatabase.DATABASE, TABLE)) {
+            keys.forEach(blackhole::consume);
+        }
+    }
+}
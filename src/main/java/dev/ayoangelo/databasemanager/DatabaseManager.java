@@ -1,18 +1,57 @@
 package dev.ayoangelo.databasemanager;
 
+import dev.ayoangelo.databasemanager.api.AsyncDatabaseAPI;
+import dev.ayoangelo.databasemanager.api.DatabaseAPI;
+import dev.ayoangelo.databasemanager.api.DatabaseMetrics;
+import dev.ayoangelo.databasemanager.api.InvalidationBus;
+import dev.ayoangelo.databasemanager.api.PartitionedTables;
+import dev.ayoangelo.databasemanager.api.PlayerDataStore;
+import dev.ayoangelo.databasemanager.api.WriteBehindQueue;
+import dev.ayoangelo.databasemanager.api.WriteJournal;
+import dev.ayoangelo.databasemanager.commands.DbReloadCommand;
+import dev.ayoangelo.databasemanager.commands.DbStatsCommand;
+import dev.ayoangelo.databasemanager.listeners.PlayerDataListener;
 import dev.ayoangelo.databasemanager.utils.Config;
 import org.bukkit.plugin.java.JavaPlugin;
 
 public final class DatabaseManager extends JavaPlugin {
 
+    private static DatabaseManager instance;
+
     @Override
     public void onEnable() {
+        instance = this;
         Config.setup(this);
+        DatabaseAPI.init();
+        WriteJournal.open(getDataFolder());
+        DatabaseAPI.warmUp();
+        getCommand("dbstats").setExecutor(new DbStatsCommand());
+        getCommand("dbreload").setExecutor(new DbReloadCommand());
+        DatabaseMetrics.registerMBean();
+        if (InvalidationBus.isEnabled()) InvalidationBus.start(this);
+        PartitionedTables.start(this);
+        if (PlayerDataStore.isEnabled()) {
+            getServer().getPluginManager().registerEvents(new PlayerDataListener(), this);
+            PlayerDataStore.start(this);
+        }
         getLogger().info("Database manager attivato!");
     }
 
     @Override
     public void onDisable() {
+        // Prima si completano i dati dei giocatori, le operazioni asincrone e le scritture in coda, poi si chiude il pool
+        PartitionedTables.stop();
+        PlayerDataStore.shutdown();
+        AsyncDatabaseAPI.shutdown();
+        WriteBehindQueue.shutdown();
+        WriteJournal.close();
+        InvalidationBus.stop();
+        DatabaseAPI.close();
+        DatabaseMetrics.unregisterMBean();
         getLogger().info("Database manager disattivato!");
     }
+
+    public static DatabaseManager getInstance() {
+        return instance;
+    }
 }
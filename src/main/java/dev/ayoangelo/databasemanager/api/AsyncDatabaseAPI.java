@@ -0,0 +1,538 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.google.gson.reflect.TypeToken;
+import dev.ayoangelo.databasemanager.DatabaseManager;
+import dev.ayoangelo.databasemanager.utils.Config;
+import org.bukkit.Bukkit;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Versione asincrona di {@link DatabaseAPI}: ogni operazione viene eseguita su un executor
+ * dedicato, dimensionato come il pool di connessioni, e restituisce un {@link CompletableFuture}.
+ * Con {@code async.virtual-threads} su Java 21+ l'executor usa thread virtuali, limitati a
+ * {@code pool-size} task concorrenti.
+ * Per tornare sul main thread usare {@link #mainThread()} o {@link #sync(CompletableFuture, Consumer)}.
+ * La coda dell'executor è limitata ({@code async.queue-size}): quando è piena, o per i task
+ * {@link Priority#LOW} già oltre {@code async.low-priority-limit} o a circuit breaker aperto, il future
+ * fallisce subito con un {@link DatabaseException} invece di accumulare lavoro.
+ */
+public class AsyncDatabaseAPI {
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static final long REJECTION_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final AtomicLong lastRejectionLog = new AtomicLong(System.nanoTime() - REJECTION_LOG_INTERVAL_NANOS);
+    private static ExecutorService executor;
+    private static int queueSize;
+
+    public enum Priority {
+        NORMAL,
+        /** Lavoro rimandabile (statistiche, log, salvataggi periodici): scartato per primo sotto carico. */
+        LOW
+    }
+
+    /**
+     * {@code true} se i task girano su thread virtuali (vedi {@link VirtualThreadExecutor}).
+     */
+    public static synchronized boolean isVirtual() {
+        return executor instanceof VirtualThreadExecutor;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null || executor.isShutdown()) {
+            int threads = DataSourceSettings.poolSize();
+            queueSize = Math.max(1, Config.getData(Integer.class, "async.queue-size", 10000));
+            if (Config.getData(Boolean.class, "async.virtual-threads", false)) {
+                executor = VirtualThreadExecutor.create(threads, queueSize);
+                if (executor != null) return executor;
+                DatabaseMetrics.logger().info("Thread virtuali non disponibili su Java " + Runtime.version().feature() + " (serve Java 21), uso un executor a thread di piattaforma");
+            }
+            AtomicInteger counter = new AtomicInteger();
+            ThreadPoolExecutor platform = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize), runnable -> {
+                Thread thread = new Thread(runnable, "DatabaseManager-Async-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            platform.allowCoreThreadTimeOut(true);
+            executor = platform;
+        }
+        return executor;
+    }
+
+    /**
+     * Adegua il numero di thread (o di task concorrenti sui thread virtuali) a {@code pool-size} dopo un reload.
+     */
+    static synchronized void resize() {
+        if (executor == null || executor.isShutdown()) return;
+        int threads = DataSourceSettings.poolSize();
+        if (executor instanceof VirtualThreadExecutor) {
+            ((VirtualThreadExecutor) executor).setConcurrency(threads);
+            return;
+        }
+        ThreadPoolExecutor platform = (ThreadPoolExecutor) executor;
+        if (threads >= platform.getMaximumPoolSize()) {
+            platform.setMaximumPoolSize(threads);
+            platform.setCorePoolSize(threads);
+        } else {
+            platform.setCorePoolSize(threads);
+            platform.setMaximumPoolSize(threads);
+        }
+    }
+
+    public static synchronized void shutdown() {
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    public static <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return supply(task, Priority.NORMAL);
+    }
+
+    public static <T> CompletableFuture<T> supply(Supplier<T> task, Priority priority) {
+        ExecutorService current = getExecutor();
+        DatabaseException rejected = admit(current, priority);
+        if (rejected != null) return CompletableFuture.failedFuture(rejected);
+        try {
+            return CompletableFuture.supplyAsync(task, current);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(rejected(DatabaseException.Kind.OVERLOADED, "coda dell'executor piena (" + queueSize + " task)"));
+        }
+    }
+
+    public static CompletableFuture<Void> run(Runnable task) {
+        return run(task, Priority.NORMAL);
+    }
+
+    public static CompletableFuture<Void> run(Runnable task, Priority priority) {
+        return supply(() -> {
+            task.run();
+            return null;
+        }, priority);
+    }
+
+    /**
+     * Come {@link DatabaseAPI#attempt(Supplier)}: il future non fallisce mai, anche un task rifiutato
+     * per sovraccarico diventa un {@link Result} con l'errore.
+     */
+    public static <T> CompletableFuture<Result<T>> attempt(Supplier<T> task) {
+        return attempt(task, Priority.NORMAL);
+    }
+
+    public static <T> CompletableFuture<Result<T>> attempt(Supplier<T> task, Priority priority) {
+        return supply(() -> DatabaseAPI.attempt(task), priority).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof DatabaseException) return Result.failure((DatabaseException) cause);
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+        });
+    }
+
+    private static DatabaseException admit(ExecutorService current, Priority priority) {
+        if (priority != Priority.LOW) return null;
+        if (CircuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+            return rejected(DatabaseException.Kind.CIRCUIT_OPEN, "task a bassa priorità scartato, circuit breaker aperto");
+        }
+        double limit = Config.getData(Double.class, "async.low-priority-limit", 0.5);
+        int queued = current instanceof VirtualThreadExecutor ? ((VirtualThreadExecutor) current).queued() : ((ThreadPoolExecutor) current).getQueue().size();
+        if (queued >= queueSize * limit) {
+            return rejected(DatabaseException.Kind.OVERLOADED, "task a bassa priorità scartato, coda oltre " + (int) (queueSize * limit) + " task");
+        }
+        return null;
+    }
+
+    private static DatabaseException rejected(DatabaseException.Kind kind, String message) {
+        long now = System.nanoTime();
+        long last = lastRejectionLog.get();
+        if (kind == DatabaseException.Kind.OVERLOADED && now - last >= REJECTION_LOG_INTERVAL_NANOS && lastRejectionLog.compareAndSet(last, now)) {
+            DatabaseMetrics.logger().warning("Executor asincrono sovraccarico: " + message);
+        }
+        return new DatabaseException(kind, "async", message);
+    }
+
+    public static Executor mainThread() {
+        return command -> {
+            if (Bukkit.isPrimaryThread()) {
+                command.run();
+            } else {
+                Bukkit.getScheduler().runTask(DatabaseManager.getInstance(), command);
+            }
+        };
+    }
+
+    public static <T> CompletableFuture<Void> sync(CompletableFuture<T> future, Consumer<? super T> callback) {
+        return future.thenAcceptAsync(callback, mainThread());
+    }
+
+    public static CompletableFuture<Boolean> transaction(Session.Task task) {
+        return supply(() -> DatabaseAPI.transaction(task));
+    }
+
+    public static CompletableFuture<Boolean> transaction(int isolation, Session.Task task) {
+        return supply(() -> DatabaseAPI.transaction(isolation, task));
+    }
+
+    public static <T> CompletableFuture<T> transactionResult(Session.Function<T> work) {
+        return supply(() -> DatabaseAPI.transactionResult(work));
+    }
+
+    public static <T> CompletableFuture<T> transactionResult(int isolation, Session.Function<T> work) {
+        return supply(() -> DatabaseAPI.transactionResult(isolation, work));
+    }
+
+    public static CompletableFuture<Boolean> session(Session.Task task) {
+        return supply(() -> DatabaseAPI.session(task));
+    }
+
+    public static CompletableFuture<Void> createDatabasesIfNotExist(String... databaseName) {
+        return run(() -> DatabaseAPI.createDatabasesIfNotExist(databaseName));
+    }
+
+    public static CompletableFuture<Void> createTablesIfNotExist(String databaseName, String... tableName) {
+        return run(() -> DatabaseAPI.createTablesIfNotExist(databaseName, tableName));
+    }
+
+    public static CompletableFuture<Void> createTablesWithoutKeyIfNotExist(String databaseName, String... tableName) {
+        return run(() -> DatabaseAPI.createTablesWithoutKeyIfNotExist(databaseName, tableName));
+    }
+
+    public static CompletableFuture<Void> createPartitionedTablesIfNotExist(String databaseName, int retentionDays, String... tableName) {
+        return run(() -> DatabaseAPI.createPartitionedTablesIfNotExist(databaseName, retentionDays, tableName));
+    }
+
+    public static CompletableFuture<List<String>> getRecentStrings(String databaseName, String tableName, Duration window) {
+        return supply(() -> DatabaseAPI.getRecentStrings(databaseName, tableName, window));
+    }
+
+    public static CompletableFuture<Void> createHashedTablesIfNotExist(String databaseName, String... tableName) {
+        return run(() -> DatabaseAPI.createHashedTablesIfNotExist(databaseName, tableName));
+    }
+
+    public static CompletableFuture<Void> createHashedTablesWithoutKeyIfNotExist(String databaseName, String... tableName) {
+        return run(() -> DatabaseAPI.createHashedTablesWithoutKeyIfNotExist(databaseName, tableName));
+    }
+
+    public static CompletableFuture<Void> addValueHashIndex(String databaseName, String tableName) {
+        return run(() -> DatabaseAPI.addValueHashIndex(databaseName, tableName));
+    }
+
+    public static CompletableFuture<Void> addJsonIndex(String databaseName, String tableName, String path, String sqlType) {
+        return run(() -> DatabaseAPI.addJsonIndex(databaseName, tableName, path, sqlType));
+    }
+
+    public static CompletableFuture<Void> createMultiColumnTableIfNotExist(String databaseName, String tableName, String... columns) {
+        return run(() -> DatabaseAPI.createMultiColumnTableIfNotExist(databaseName, tableName, columns));
+    }
+
+    public static CompletableFuture<Void> migrateTableToBinary(String databaseName, String tableName) {
+        return run(() -> DatabaseAPI.migrateTableToBinary(databaseName, tableName));
+    }
+
+    public static CompletableFuture<Boolean> databaseExist(String databaseName) {
+        return supply(() -> DatabaseAPI.databaseExist(databaseName));
+    }
+
+    public static CompletableFuture<Boolean> tableExist(String databaseName, String tableName) {
+        return supply(() -> DatabaseAPI.tableExist(databaseName, tableName));
+    }
+
+    public static CompletableFuture<Void> deleteDatabasesIfExist(String... databaseName) {
+        return run(() -> DatabaseAPI.deleteDatabasesIfExist(databaseName));
+    }
+
+    public static CompletableFuture<Void> deleteTablesIfExist(String databaseName, String... tableName) {
+        return run(() -> DatabaseAPI.deleteTablesIfExist(databaseName, tableName));
+    }
+
+    public static CompletableFuture<String> getTableType(String databaseName, String tableName) {
+        return supply(() -> DatabaseAPI.getTableType(databaseName, tableName));
+    }
+
+    public static CompletableFuture<String> getString(String databaseName, String tableName, String key) {
+        return supply(() -> DatabaseAPI.getString(databaseName, tableName, key));
+    }
+
+    public static CompletableFuture<List<String>> getStringList(String databaseName, String tableName, String key) {
+        return supply(() -> DatabaseAPI.getStringList(databaseName, tableName, key));
+    }
+
+    public static CompletableFuture<Object> getData(Object example, String databaseName, String tableName, String key) {
+        return supply(() -> DatabaseAPI.getData(example, databaseName, tableName, key));
+    }
+
+    public static <T> CompletableFuture<T> getData(Class<T> type, String databaseName, String tableName, String key) {
+        return supply(() -> DatabaseAPI.getData(type, databaseName, tableName, key));
+    }
+
+    public static <T> CompletableFuture<T> getData(TypeToken<T> type, String databaseName, String tableName, String key) {
+        return supply(() -> DatabaseAPI.getData(type, databaseName, tableName, key));
+    }
+
+    public static CompletableFuture<String> getStringFromColumn(String databaseName, String tableName, String key, String columnName) {
+        return supply(() -> DatabaseAPI.getStringFromColumn(databaseName, tableName, key, columnName));
+    }
+
+    public static CompletableFuture<List<String>> getStringListFromColumn(String databaseName, String tableName, String key, String columnName) {
+        return supply(() -> DatabaseAPI.getStringListFromColumn(databaseName, tableName, key, columnName));
+    }
+
+    public static CompletableFuture<Object> getObjectFromColumn(Object example, String databaseName, String tableName, String key, String columnName) {
+        return supply(() -> DatabaseAPI.getObjectFromColumn(example, databaseName, tableName, key, columnName));
+    }
+
+    public static <T> CompletableFuture<T> getObjectFromColumn(Class<T> type, String databaseName, String tableName, String key, String columnName) {
+        return supply(() -> DatabaseAPI.getObjectFromColumn(type, databaseName, tableName, key, columnName));
+    }
+
+    public static <T> CompletableFuture<T> getObjectFromColumn(TypeToken<T> type, String databaseName, String tableName, String key, String columnName) {
+        return supply(() -> DatabaseAPI.getObjectFromColumn(type, databaseName, tableName, key, columnName));
+    }
+
+    public static CompletableFuture<Map<String, String>> getStrings(String databaseName, String tableName, Collection<String> keys) {
+        return supply(() -> DatabaseAPI.getStrings(databaseName, tableName, keys));
+    }
+
+    public static CompletableFuture<Map<String, Object>> getDataMany(Object example, String databaseName, String tableName, Collection<String> keys) {
+        return supply(() -> DatabaseAPI.getDataMany(example, databaseName, tableName, keys));
+    }
+
+    public static <T> CompletableFuture<Map<String, T>> getDataMany(Class<T> type, String databaseName, String tableName, Collection<String> keys) {
+        return supply(() -> DatabaseAPI.getDataMany(type, databaseName, tableName, keys));
+    }
+
+    public static <T> CompletableFuture<Map<String, T>> getDataMany(TypeToken<T> type, String databaseName, String tableName, Collection<String> keys) {
+        return supply(() -> DatabaseAPI.getDataMany(type, databaseName, tableName, keys));
+    }
+
+    public static CompletableFuture<Map<String, String>> getStringsFromColumn(String databaseName, String tableName, Collection<String> keys, String columnName) {
+        return supply(() -> DatabaseAPI.getStringsFromColumn(databaseName, tableName, keys, columnName));
+    }
+
+    public static CompletableFuture<Map<String, Object>> getObjectsFromColumn(Object example, String databaseName, String tableName, Collection<String> keys, String columnName) {
+        return supply(() -> DatabaseAPI.getObjectsFromColumn(example, databaseName, tableName, keys, columnName));
+    }
+
+    public static CompletableFuture<Void> saveString(String databaseName, String tableName, String key, String value) {
+        return run(() -> DatabaseAPI.saveString(databaseName, tableName, key, value));
+    }
+
+    public static CompletableFuture<Void> saveStringList(String databaseName, String tableName, String key, List<String> value) {
+        return run(() -> DatabaseAPI.saveStringList(databaseName, tableName, key, value));
+    }
+
+    public static CompletableFuture<Void> saveString(String databaseName, String tableName, String value) {
+        return run(() -> DatabaseAPI.saveString(databaseName, tableName, value));
+    }
+
+    public static CompletableFuture<Void> saveData(String databaseName, String tableName, String key, Object value) {
+        return run(() -> DatabaseAPI.saveData(databaseName, tableName, key, value));
+    }
+
+    public static CompletableFuture<Void> saveData(String databaseName, String tableName, Object value) {
+        return run(() -> DatabaseAPI.saveData(databaseName, tableName, value));
+    }
+
+    public static CompletableFuture<Void> saveStringInColumn(String databaseName, String tableName, String key, String columnName, String value) {
+        return run(() -> DatabaseAPI.saveStringInColumn(databaseName, tableName, key, columnName, value));
+    }
+
+    public static CompletableFuture<Void> saveStringListInColumn(String databaseName, String tableName, String key, String columnName, List<String> value) {
+        return run(() -> DatabaseAPI.saveStringListInColumn(databaseName, tableName, key, columnName, value));
+    }
+
+    public static CompletableFuture<Void> saveObjectInColumn(String databaseName, String tableName, String key, String columnName, Object value) {
+        return run(() -> DatabaseAPI.saveObjectInColumn(databaseName, tableName, key, columnName, value));
+    }
+
+    public static CompletableFuture<Long> increment(String databaseName, String tableName, String key, String columnName, long delta) {
+        return supply(() -> DatabaseAPI.increment(databaseName, tableName, key, columnName, delta));
+    }
+
+    public static CompletableFuture<Double> increment(String databaseName, String tableName, String key, String columnName, double delta) {
+        return supply(() -> DatabaseAPI.increment(databaseName, tableName, key, columnName, delta));
+    }
+
+    public static CompletableFuture<Boolean> compareAndSet(String databaseName, String tableName, String key, String columnName, String expected, String value) {
+        return supply(() -> DatabaseAPI.compareAndSet(databaseName, tableName, key, columnName, expected, value));
+    }
+
+    public static CompletableFuture<Boolean> compareAndSetVersion(String databaseName, String tableName, String key, String columnName, String versionColumn, long expectedVersion, String value) {
+        return supply(() -> DatabaseAPI.compareAndSetVersion(databaseName, tableName, key, columnName, versionColumn, expectedVersion, value));
+    }
+
+    public static CompletableFuture<Boolean> updateJson(String databaseName, String tableName, String key, String path, Object value) {
+        return supply(() -> DatabaseAPI.updateJson(databaseName, tableName, key, path, value));
+    }
+
+    public static CompletableFuture<Boolean> updateJson(String databaseName, String tableName, String key, Map<String, ?> values) {
+        return supply(() -> DatabaseAPI.updateJson(databaseName, tableName, key, values));
+    }
+
+    public static CompletableFuture<Boolean> removeJson(String databaseName, String tableName, String key, String path) {
+        return supply(() -> DatabaseAPI.removeJson(databaseName, tableName, key, path));
+    }
+
+    public static CompletableFuture<Long> incrementJson(String databaseName, String tableName, String key, String path, long delta) {
+        return supply(() -> DatabaseAPI.incrementJson(databaseName, tableName, key, path, delta));
+    }
+
+    public static CompletableFuture<Double> incrementJson(String databaseName, String tableName, String key, String path, double delta) {
+        return supply(() -> DatabaseAPI.incrementJson(databaseName, tableName, key, path, delta));
+    }
+
+    public static <T> CompletableFuture<T> getJson(Class<T> type, String databaseName, String tableName, String key, String path) {
+        return supply(() -> DatabaseAPI.getJson(type, databaseName, tableName, key, path));
+    }
+
+    public static CompletableFuture<byte[]> getBytes(String databaseName, String tableName, String key) {
+        return supply(() -> DatabaseAPI.getBytes(databaseName, tableName, key));
+    }
+
+    public static CompletableFuture<Void> saveBytes(String databaseName, String tableName, String key, byte[] value) {
+        return run(() -> DatabaseAPI.saveBytes(databaseName, tableName, key, value));
+    }
+
+    public static <T> CompletableFuture<T> getBinaryData(Codec<T> codec, String databaseName, String tableName, String key) {
+        return supply(() -> DatabaseAPI.getBinaryData(codec, databaseName, tableName, key));
+    }
+
+    public static <T> CompletableFuture<Void> saveBinaryData(String databaseName, String tableName, String key, T value, Codec<T> codec) {
+        return run(() -> DatabaseAPI.saveBinaryData(databaseName, tableName, key, value, codec));
+    }
+
+    public static CompletableFuture<byte[]> getBytesFromColumn(String databaseName, String tableName, String key, String columnName) {
+        return supply(() -> DatabaseAPI.getBytesFromColumn(databaseName, tableName, key, columnName));
+    }
+
+    public static CompletableFuture<Void> saveBytesInColumn(String databaseName, String tableName, String key, String columnName, byte[] value) {
+        return run(() -> DatabaseAPI.saveBytesInColumn(databaseName, tableName, key, columnName, value));
+    }
+
+    public static <T> CompletableFuture<T> getBinaryObjectFromColumn(Codec<T> codec, String databaseName, String tableName, String key, String columnName) {
+        return supply(() -> DatabaseAPI.getBinaryObjectFromColumn(codec, databaseName, tableName, key, columnName));
+    }
+
+    public static <T> CompletableFuture<Void> saveBinaryObjectInColumn(String databaseName, String tableName, String key, String columnName, T value, Codec<T> codec) {
+        return run(() -> DatabaseAPI.saveBinaryObjectInColumn(databaseName, tableName, key, columnName, value, codec));
+    }
+
+    public static CompletableFuture<List<String>> getBinaryStringList(String databaseName, String tableName, String key) {
+        return supply(() -> DatabaseAPI.getBinaryStringList(databaseName, tableName, key));
+    }
+
+    public static CompletableFuture<Void> saveBinaryStringList(String databaseName, String tableName, String key, List<String> value) {
+        return run(() -> DatabaseAPI.saveBinaryStringList(databaseName, tableName, key, value));
+    }
+
+    public static CompletableFuture<Void> createBinaryTablesIfNotExist(String databaseName, String... tableName) {
+        return run(() -> DatabaseAPI.createBinaryTablesIfNotExist(databaseName, tableName));
+    }
+
+    public static CompletableFuture<Void> createBinaryMultiColumnTableIfNotExist(String databaseName, String tableName, String... columns) {
+        return run(() -> DatabaseAPI.createBinaryMultiColumnTableIfNotExist(databaseName, tableName, columns));
+    }
+
+    public static CompletableFuture<Void> deleteValue(String databaseName, String tableName, String key) {
+        return run(() -> DatabaseAPI.deleteValue(databaseName, tableName, key));
+    }
+
+    public static CompletableFuture<Void> removeString(String databaseName, String tableName, String value) {
+        return run(() -> DatabaseAPI.removeString(databaseName, tableName, value));
+    }
+
+    public static CompletableFuture<Void> removeValue(String databaseName, String tableName, Object value) {
+        return run(() -> DatabaseAPI.removeValue(databaseName, tableName, value));
+    }
+
+    public static CompletableFuture<List<String>> getTableKeys(String databaseName, String tableName) {
+        return supply(() -> DatabaseAPI.getTableKeys(databaseName, tableName));
+    }
+
+    public static CompletableFuture<List<String>> getTableStrings(String databaseName, String tableName) {
+        return supply(() -> DatabaseAPI.getTableStrings(databaseName, tableName));
+    }
+
+    public static CompletableFuture<List<Object>> getTableObject(String databaseName, String tableName) {
+        return supply(() -> DatabaseAPI.getTableObject(databaseName, tableName));
+    }
+
+    public static <T> CompletableFuture<List<T>> getTableObject(Class<T> type, String databaseName, String tableName) {
+        return supply(() -> DatabaseAPI.getTableObject(type, databaseName, tableName));
+    }
+
+    public static <T> CompletableFuture<List<T>> getTableObject(TypeToken<T> type, String databaseName, String tableName) {
+        return supply(() -> DatabaseAPI.getTableObject(type, databaseName, tableName));
+    }
+
+    public static CompletableFuture<Void> forEachTableKey(String databaseName, String tableName, Consumer<String> action) {
+        return run(() -> DatabaseAPI.forEachTableKey(databaseName, tableName, action));
+    }
+
+    public static CompletableFuture<Void> forEachTableString(String databaseName, String tableName, Consumer<String> action) {
+        return run(() -> DatabaseAPI.forEachTableString(databaseName, tableName, action));
+    }
+
+    public static CompletableFuture<Void> forEachTableKeyPaged(String databaseName, String tableName, int pageSize, Consumer<String> action) {
+        return run(() -> DatabaseAPI.forEachTableKeyPaged(databaseName, tableName, pageSize, action));
+    }
+
+    public static CompletableFuture<Void> forEachTableStringPaged(String databaseName, String tableName, int pageSize, Consumer<String> action) {
+        return run(() -> DatabaseAPI.forEachTableStringPaged(databaseName, tableName, pageSize, action));
+    }
+
+    public static CompletableFuture<List<String>> getTableKeysAfter(String databaseName, String tableName, String afterKey, int limit) {
+        return supply(() -> DatabaseAPI.getTableKeysAfter(databaseName, tableName, afterKey, limit));
+    }
+
+    public static CompletableFuture<LinkedHashMap<Long, String>> getTableStringsAfter(String databaseName, String tableName, long afterId, int limit) {
+        return supply(() -> DatabaseAPI.getTableStringsAfter(databaseName, tableName, afterId, limit));
+    }
+
+    public static CompletableFuture<List<String>> getTables(String databaseName) {
+        return supply(() -> DatabaseAPI.getTables(databaseName));
+    }
+
+    public static CompletableFuture<Boolean> hasKey(String databaseName, String tableName, String key) {
+        return supply(() -> DatabaseAPI.hasKey(databaseName, tableName, key));
+    }
+
+    public static CompletableFuture<Boolean> hasString(String databaseName, String tableName, String value) {
+        return supply(() -> DatabaseAPI.hasString(databaseName, tableName, value));
+    }
+
+    public static CompletableFuture<Boolean> hasObject(String databaseName, String tableName, Object value) {
+        return supply(() -> DatabaseAPI.hasObject(databaseName, tableName, value));
+    }
+
+    public static CompletableFuture<List<String>> getKeysByJson(String databaseName, String tableName, String path, Object value) {
+        return supply(() -> DatabaseAPI.getKeysByJson(databaseName, tableName, path, value));
+    }
+
+    public static CompletableFuture<Long> exportTable(String databaseName, String tableName, Path file, BulkTransfer.Format format, BulkTransfer.Progress progress) {
+        return supply(() -> BulkTransfer.exportTable(databaseName, tableName, file, format, progress));
+    }
+
+    public static CompletableFuture<Long> importTable(String databaseName, String tableName, Path file, BulkTransfer.Format format, BulkTransfer.Progress progress) {
+        return supply(() -> BulkTransfer.importTable(databaseName, tableName, file, format, progress));
+    }
+
+    public static CompletableFuture<Long> copyTable(String sourceDatabase, String sourceTable, String targetDatabase, String targetTable, BulkTransfer.Progress progress) {
+        return supply(() -> BulkTransfer.copyTable(sourceDatabase, sourceTable, targetDatabase, targetTable, progress));
+    }
+}
@@ -0,0 +1,159 @@
+package dev.ayoangelo.databasemanager.api;
+
+import dev.ayoangelo.databasemanager.utils.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Formato dei valori nelle tabelle binarie ({@code MEDIUMBLOB}). Il primo byte indica come è
+ * codificato il resto: {@link #RAW} oppure {@link #DEFLATE}. I valori senza intestazione, cioè il testo
+ * rimasto nelle colonne convertite da {@code TEXT} con {@link DatabaseAPI#migrateTableToBinary}, vengono
+ * letti così come sono.
+ */
+public final class BinaryFormat {
+    public static final byte RAW = 0;
+    public static final byte DEFLATE = 1;
+
+    private BinaryFormat() {
+    }
+
+    public static byte[] pack(byte[] data) {
+        int threshold = Config.getData(Integer.class, "binary.compression-threshold", 512);
+        if (threshold >= 0 && data.length >= threshold) {
+            byte[] compressed = deflate(data);
+            if (compressed.length < data.length) return compressed;
+        }
+        byte[] packed = new byte[data.length + 1];
+        packed[0] = RAW;
+        System.arraycopy(data, 0, packed, 1, data.length);
+        return packed;
+    }
+
+    public static byte[] unpack(byte[] packed) {
+        if (packed == null) return null;
+        if (packed.length == 0) return packed;
+        switch (packed[0]) {
+            case RAW:
+                byte[] data = new byte[packed.length - 1];
+                System.arraycopy(packed, 1, data, 0, data.length);
+                return data;
+            case DEFLATE:
+                return inflate(packed);
+            default:
+                return packed;
+        }
+    }
+
+    /**
+     * Decodifica un valore letto da una tabella binaria. Il testo senza intestazione rimasto da
+     * {@link DatabaseAPI#migrateTableToBinary} passa da {@link Codec#decode}, non da
+     * {@link Codec#decodeBytes}, che si aspetta la rappresentazione binaria del codec.
+     */
+    public static <T> T decode(Codec<T> codec, byte[] packed) {
+        if (packed.length == 0 || (packed[0] != RAW && packed[0] != DEFLATE)) return codec.decode(new String(packed, StandardCharsets.UTF_8));
+        return codec.decodeBytes(unpack(packed));
+    }
+
+    public static byte[] encodeStringList(List<String> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, values.size());
+        for (String value : values) {
+            if (value == null) {
+                writeVarInt(out, 0);
+                continue;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length + 1);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    public static List<String> decodeStringList(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            int size = readVarInt(buffer);
+            // Ogni elemento occupa almeno un byte: una dimensione corrotta non può forzare un'allocazione enorme
+            List<String> values = new ArrayList<>(Math.min(size, data.length));
+            for (int i = 0; i < size; i++) {
+                int length = readVarInt(buffer);
+                if (length == 0) {
+                    values.add(null);
+                    continue;
+                }
+                values.add(new String(data, buffer.position(), length - 1, StandardCharsets.UTF_8));
+                buffer.position(buffer.position() + length - 1);
+            }
+            return values;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Lista binaria non valida", e);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            out.write(DEFLATE);
+            writeVarInt(out, data.length);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] packed) {
+        ByteBuffer buffer = ByteBuffer.wrap(packed, 1, packed.length - 1);
+        int length = readVarInt(buffer);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packed, buffer.position(), buffer.remaining());
+            byte[] data = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int read = inflater.inflate(data, offset, length - offset);
+                if (read == 0 && inflater.needsInput()) break;
+                offset += read;
+            }
+            if (offset != length) throw new IllegalArgumentException("Valore compresso troncato");
+            return data;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Valore compresso non valido", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("VarInt troppo lungo");
+    }
+}
@@ -0,0 +1,762 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import dev.ayoangelo.databasemanager.utils.Config;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Esportazione, importazione e copia di intere tabelle. Il lavoro viene diviso in intervalli della
+ * chiave primaria di {@code bulk.chunk-size} righe, elaborati in parallelo da {@code bulk.parallelism}
+ * connessioni del pool; in memoria restano al più pochi batch per thread, qualunque sia la dimensione
+ * della tabella. Le colonne generate ({@code value_hash}, indici JSON) non vengono trasferite: le
+ * ricalcola MySQL. I file che finiscono in {@code .gz} vengono compressi.
+ * <p>
+ * Tutti i metodi bloccano il thread chiamante e restituiscono le righe trasferite, o {@code -1} se
+ * l'operazione è fallita.
+ */
+public class BulkTransfer {
+    private static final int BINARY_MAGIC = 0x444D5831; // "DMX1"
+    private static final Set<String> BINARY_TYPES = Set.of("binary", "varbinary", "tinyblob", "blob", "mediumblob", "longblob");
+    private static final Gson gson = new Gson();
+    private static final Batch END = new Batch(List.of(), List.of());
+
+    public enum Format {
+        /** Un oggetto JSON per riga, con le colonne binarie in Base64. */
+        NDJSON,
+        /** Intestazione con i nomi delle colonne, poi valori con lunghezza: più compatto e veloce da leggere. */
+        BINARY
+    }
+
+    @FunctionalInterface
+    public interface Progress {
+        /**
+         * Chiamato dai thread di lavoro dopo ogni batch. {@code totalRows} è {@code -1} quando non è noto
+         * (importazione da file).
+         */
+        void update(long rows, long totalRows);
+    }
+
+    private static int parallelism() {
+        int fallback = Math.max(1, Math.min(4, DataSourceSettings.poolSize() / 2));
+        // Almeno una connessione resta libera per il resto del server
+        return Math.max(1, Math.min(Config.getData(Integer.class, "bulk.parallelism", fallback), DataSourceSettings.poolSize() - 1));
+    }
+
+    private static int chunkSize() {
+        return Math.max(1, Config.getData(Integer.class, "bulk.chunk-size", 10000));
+    }
+
+    private static int batchSize() {
+        return Math.max(1, Config.getData(Integer.class, "bulk.batch-size", 1000));
+    }
+
+    /**
+     * Scrive tutte le righe della tabella in {@code file}. Il file viene scritto accanto con estensione
+     * {@code .tmp} e rinominato solo a esportazione completata. Le letture usano le repliche, se configurate.
+     */
+    public static long exportTable(String databaseName, String tableName, Path file, Format format, Progress progress) {
+        TableHandle handle = DatabaseAPI.table(databaseName, tableName);
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!DatabaseAPI.journalReplayed("exportTable", databaseName, tableName)) return -1;
+        Plan plan = plan("exportTable", handle);
+        if (plan == null) return -1;
+        Job job = new Job(progress, plan.totalRows());
+        RowFormat rows = format == Format.NDJSON ? new NdjsonFormat(plan.layout) : new BinaryFormat(plan.layout);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long exported;
+        try (OutputStream out = output(temporary)) {
+            rows.writeHeader(out);
+            exported = runParallel("exportTable", handle, plan.ranges, range -> exportRange(handle, plan.layout, range, rows, out, job));
+            if (exported >= 0) rows.writeFooter(out);
+        } catch (IOException e) {
+            DatabaseMetrics.logger().warning("Esportazione di " + handle + " in " + file + " fallita: " + e.getMessage());
+            exported = -1;
+        }
+        try {
+            if (exported >= 0) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            DatabaseMetrics.logger().warning("Impossibile spostare " + temporary + " in " + file + ": " + e.getMessage());
+            return -1;
+        }
+        return exported;
+    }
+
+    /**
+     * Inserisce nella tabella (che deve già esistere) le righe di {@code file}. Le righe con una chiave già
+     * presente vengono sovrascritte, quindi un'importazione interrotta si può ripetere. Il file viene letto
+     * da un solo thread, mentre {@code bulk.parallelism} connessioni scrivono batch di {@code bulk.batch-size}
+     * righe; con {@code rewriteBatchedStatements} ogni batch diventa un unico INSERT multi-riga. Le colonne
+     * del file che la tabella non ha vengono ignorate.
+     */
+    public static long importTable(String databaseName, String tableName, Path file, Format format, Progress progress) {
+        TableHandle handle = DatabaseAPI.table(databaseName, tableName);
+        // Le scritture nel journal, più vecchie, sovrascriverebbero le righe importate
+        if (!DatabaseAPI.journalReplayed("importTable", databaseName, tableName)) return -1;
+        Layout layout = DatabaseAPI.execute("importTable", databaseName, tableName, null, conn -> Layout.read(conn, handle));
+        if (layout == null) return -1;
+        int threads = parallelism();
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(threads * 2);
+        AtomicBoolean failed = new AtomicBoolean();
+        Job job = new Job(progress, -1);
+        ExecutorService workers = workers(threads);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(workers.submit(() -> {
+                long rows = 0;
+                for (Batch batch = queue.take(); batch != END; batch = queue.take()) {
+                    // Dopo un errore si continua a svuotare la coda, altrimenti il lettore resterebbe bloccato
+                    if (failed.get()) continue;
+                    Long written = insertBatch(handle, batch);
+                    if (written == null) {
+                        failed.set(true);
+                    } else {
+                        rows += written;
+                        job.advance(written);
+                    }
+                }
+                return rows;
+            }));
+        }
+        try {
+            try (InputStream in = input(file)) {
+                RowReader reader = format == Format.NDJSON ? new NdjsonReader(in, layout) : new BinaryReader(in, layout);
+                for (Batch batch = reader.next(batchSize()); batch != null && !failed.get(); batch = reader.next(batchSize())) {
+                    queue.put(batch);
+                }
+            } catch (IOException | RuntimeException e) {
+                DatabaseMetrics.logger().warning("Lettura di " + file + " per " + handle + " fallita: " + e.getMessage());
+                failed.set(true);
+            }
+            for (int i = 0; i < threads; i++) {
+                queue.put(END);
+            }
+            long imported = 0;
+            for (Future<Long> result : results) {
+                imported += result.get();
+            }
+            return failed.get() ? -1 : imported;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (ExecutionException e) {
+            DatabaseMetrics.logger().warning("Importazione in " + handle + " fallita: " + e.getCause());
+            return -1;
+        } finally {
+            workers.shutdownNow();
+            DatabaseAPI.writtenAll(databaseName, tableName);
+        }
+    }
+
+    /**
+     * Copia le righe di una tabella in un'altra (già esistente) sullo stesso server con
+     * {@code INSERT ... SELECT} per ogni intervallo di chiavi: i dati non passano dal plugin. Vengono
+     * copiate le colonne presenti in entrambe le tabelle; le righe con una chiave già presente vengono
+     * sovrascritte.
+     */
+    public static long copyTable(String sourceDatabase, String sourceTable, String targetDatabase, String targetTable, Progress progress) {
+        TableHandle source = DatabaseAPI.table(sourceDatabase, sourceTable);
+        TableHandle target = DatabaseAPI.table(targetDatabase, targetTable);
+        WriteBehindQueue.flush(sourceDatabase, sourceTable);
+        WriteBehindQueue.flush(targetDatabase, targetTable);
+        if (!DatabaseAPI.journalReplayed("copyTable", sourceDatabase, sourceTable) || !DatabaseAPI.journalReplayed("copyTable", targetDatabase, targetTable)) return -1;
+        Plan plan = plan("copyTable", source);
+        if (plan == null) return -1;
+        Layout targetLayout = DatabaseAPI.execute("copyTable", targetDatabase, targetTable, null, conn -> Layout.read(conn, target));
+        if (targetLayout == null) return -1;
+        List<String> columns = new ArrayList<>(plan.layout.columns);
+        columns.retainAll(targetLayout.columns);
+        if (columns.isEmpty()) {
+            DatabaseMetrics.logger().warning("Copia di " + source + " in " + target + " impossibile: nessuna colonna in comune");
+            return -1;
+        }
+        Job job = new Job(progress, plan.totalRows());
+        try {
+            return runParallel("copyTable", target, plan.ranges, range -> {
+                String sql = target.query("B|copy|" + source + "|" + String.join(",", columns) + "|" + range.shape(), () ->
+                        "INSERT INTO `" + targetDatabase + "`.`" + targetTable + "` (" + quote(columns) + ") SELECT " + quote(columns)
+                                + " FROM `" + sourceDatabase + "`.`" + sourceTable + "`" + range.where(plan.layout.primaryKey)
+                                + " ON DUPLICATE KEY UPDATE " + updates(columns));
+                String countSql = source.query("B|copyCount|" + range.shape(), () ->
+                        "SELECT COUNT(*) FROM `" + sourceDatabase + "`.`" + sourceTable + "`" + range.where(plan.layout.primaryKey) + " LOCK IN SHARE MODE");
+                Long copied = DatabaseAPI.execute("copyTable", targetDatabase, targetTable, null, conn -> {
+                    // Il risultato di executeUpdate non conta le righe: con ON DUPLICATE KEY UPDATE vale 2 per una
+                    // riga sovrascritta e 0 per una invariata. Le righe contate restano bloccate fino al commit,
+                    // quindi l'INSERT ... SELECT copia esattamente quelle
+                    boolean autoCommit = conn.getAutoCommit();
+                    conn.setAutoCommit(false);
+                    try {
+                        long rows;
+                        try (PreparedStatement ps = conn.prepareStatement(countSql)) {
+                            range.bind(ps, 1);
+                            try (ResultSet rs = ps.executeQuery()) {
+                                rows = rs.next() ? rs.getLong(1) : 0;
+                            }
+                        }
+                        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                            range.bind(ps, 1);
+                            ps.executeUpdate();
+                        }
+                        conn.commit();
+                        return rows;
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        throw e;
+                    } finally {
+                        conn.setAutoCommit(autoCommit);
+                    }
+                });
+                if (copied != null) job.advance(copied);
+                return copied;
+            });
+        } finally {
+            DatabaseAPI.writtenAll(targetDatabase, targetTable);
+        }
+    }
+
+    private static Long exportRange(TableHandle handle, Layout layout, Range range, RowFormat format, OutputStream out, Job job) {
+        String sql = handle.query("B|export|" + range.shape(), () ->
+                "SELECT " + quote(layout.columns) + " FROM `" + handle.getDatabaseName() + "`.`" + handle.getTableName() + "`" + range.where(layout.primaryKey));
+        int batchSize = batchSize();
+        return DatabaseAPI.executeRead("exportTable", handle.getDatabaseName(), handle.getTableName(), null, null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                int fetchSize = Config.getData(Integer.class, "streaming.fetch-size", 1000);
+                ps.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+                range.bind(ps, 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    long rows = 0;
+                    int pending = 0;
+                    while (rs.next()) {
+                        format.writeRow(buffer, rs);
+                        rows++;
+                        if (++pending == batchSize) {
+                            write(out, buffer);
+                            job.advance(pending);
+                            pending = 0;
+                        }
+                    }
+                    write(out, buffer);
+                    job.advance(pending);
+                    return rows;
+                }
+            }
+        });
+    }
+
+    private static void write(OutputStream out, ByteArrayOutputStream buffer) {
+        if (buffer.size() == 0) return;
+        try {
+            synchronized (out) {
+                buffer.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.reset();
+    }
+
+    private static Long insertBatch(TableHandle handle, Batch batch) {
+        String sql = handle.query("B|import|" + String.join(",", batch.columns), () ->
+                "INSERT INTO `" + handle.getDatabaseName() + "`.`" + handle.getTableName() + "` (" + quote(batch.columns) + ") VALUES ("
+                        + String.join(", ", Collections.nCopies(batch.columns.size(), "?")) + ") ON DUPLICATE KEY UPDATE " + updates(batch.columns));
+        return DatabaseAPI.execute("importTable", handle.getDatabaseName(), handle.getTableName(), null, conn -> {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (Object[] row : batch.rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        ps.setObject(i + 1, row[i]);
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+                return (long) batch.rows.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    /**
+     * Esegue {@code task} per ogni intervallo su un gruppo di thread dedicato, senza occupare l'executor
+     * di {@link AsyncDatabaseAPI}. Al primo intervallo fallito gli altri non ancora iniziati vengono annullati.
+     */
+    private static long runParallel(String operation, TableHandle handle, List<Range> ranges, RangeTask task) {
+        ExecutorService workers = workers(Math.min(parallelism(), ranges.size()));
+        List<Future<Long>> results = new ArrayList<>();
+        try {
+            for (Range range : ranges) {
+                results.add(workers.submit(() -> task.run(range)));
+            }
+            long total = 0;
+            for (Future<Long> result : results) {
+                Long rows = result.get();
+                if (rows == null) return -1;
+                total += rows;
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (ExecutionException e) {
+            DatabaseMetrics.logger().warning("Operazione " + operation + " su " + handle + " fallita: " + e.getCause());
+            return -1;
+        } finally {
+            results.forEach(result -> result.cancel(false));
+            workers.shutdown();
+        }
+    }
+
+    private static ExecutorService workers(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "DatabaseManager-Bulk-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Divide la tabella in intervalli della chiave primaria di {@code bulk.chunk-size} righe. I limiti si
+     * trovano scorrendo solo l'indice della chiave, un intervallo alla volta; senza chiave primaria
+     * l'intervallo è uno solo.
+     */
+    private static Plan plan(String operation, TableHandle handle) {
+        return DatabaseAPI.execute(operation, handle.getDatabaseName(), handle.getTableName(), null, conn -> {
+            Layout layout = Layout.read(conn, handle);
+            String table = "`" + handle.getDatabaseName() + "`.`" + handle.getTableName() + "`";
+            List<Range> ranges = new ArrayList<>();
+            if (layout.primaryKey == null) {
+                ranges.add(new Range(null, null, count(conn, "SELECT COUNT(*) FROM " + table)));
+                return new Plan(layout, ranges);
+            }
+            String key = "`" + layout.primaryKey + "`";
+            int chunk = chunkSize();
+            Object from = null;
+            while (true) {
+                String sql = "SELECT " + key + " FROM " + table + (from == null ? "" : " WHERE " + key + " >= ?") + " ORDER BY " + key + " LIMIT 1 OFFSET " + chunk;
+                Object to;
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    if (from != null) ps.setObject(1, from);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        to = rs.next() ? rs.getObject(1) : null;
+                    }
+                }
+                long rows = chunk;
+                if (to != null && Objects.deepEquals(to, from)) {
+                    // Più di chunk-size righe con lo stesso valore (chiave composta): l'intervallo arriva al valore successivo
+                    try (PreparedStatement ps = conn.prepareStatement("SELECT " + key + " FROM " + table + " WHERE " + key + " > ? ORDER BY " + key + " LIMIT 1")) {
+                        ps.setObject(1, from);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            to = rs.next() ? rs.getObject(1) : null;
+                        }
+                    }
+                    if (to != null) rows = count(conn, "SELECT COUNT(*) FROM " + table + " WHERE " + key + " >= ? AND " + key + " < ?", from, to);
+                }
+                if (to == null) {
+                    ranges.add(from == null
+                            ? new Range(null, null, count(conn, "SELECT COUNT(*) FROM " + table))
+                            : new Range(from, null, count(conn, "SELECT COUNT(*) FROM " + table + " WHERE " + key + " >= ?", from)));
+                    return new Plan(layout, ranges);
+                }
+                ranges.add(new Range(from, to, rows));
+                from = to;
+            }
+        });
+    }
+
+    private static long count(Connection conn, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static String quote(List<String> columns) {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (String column : columns) {
+            joiner.add("`" + column + "`");
+        }
+        return joiner.toString();
+    }
+
+    private static String updates(List<String> columns) {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (String column : columns) {
+            joiner.add("`" + column + "` = VALUES(`" + column + "`)");
+        }
+        return joiner.toString();
+    }
+
+    private static OutputStream output(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (file.toString().endsWith(".gz.tmp") || file.toString().endsWith(".gz")) out = new GZIPOutputStream(out, 1 << 16);
+        return new BufferedOutputStream(out, 1 << 16);
+    }
+
+    private static InputStream input(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.toString().endsWith(".gz")) in = new GZIPInputStream(in, 1 << 16);
+        return new BufferedInputStream(in, 1 << 16);
+    }
+
+    @FunctionalInterface
+    private interface RangeTask {
+        Long run(Range range);
+    }
+
+    /**
+     * Colonne scrivibili della tabella (escluse quelle generate), quali sono binarie e prima colonna della
+     * chiave primaria.
+     */
+    private static final class Layout {
+        private final List<String> columns = new ArrayList<>();
+        private final Set<String> binary = new HashSet<>();
+        private String primaryKey;
+
+        private static Layout read(Connection conn, TableHandle handle) throws SQLException {
+            Layout layout = new Layout();
+            String sql = "SELECT COLUMN_NAME, DATA_TYPE, EXTRA FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, handle.getDatabaseName());
+                ps.setString(2, handle.getTableName());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String extra = rs.getString("EXTRA");
+                        if (extra != null && extra.toUpperCase(Locale.ROOT).contains("GENERATED")) continue;
+                        String name = rs.getString("COLUMN_NAME");
+                        layout.columns.add(name);
+                        if (BINARY_TYPES.contains(rs.getString("DATA_TYPE").toLowerCase(Locale.ROOT))) layout.binary.add(name);
+                    }
+                }
+            }
+            if (layout.columns.isEmpty()) throw new SQLException("Tabella " + handle + " non trovata");
+            sql = "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? "
+                    + "AND CONSTRAINT_NAME = 'PRIMARY' AND ORDINAL_POSITION = 1";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, handle.getDatabaseName());
+                ps.setString(2, handle.getTableName());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) layout.primaryKey = rs.getString(1);
+                }
+            }
+            return layout;
+        }
+    }
+
+    private static final class Plan {
+        private final Layout layout;
+        private final List<Range> ranges;
+
+        private Plan(Layout layout, List<Range> ranges) {
+            this.layout = layout;
+            this.ranges = ranges;
+        }
+
+        private long totalRows() {
+            long total = 0;
+            for (Range range : ranges) {
+                total += range.rows;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Intervallo {@code [from, to)} della chiave primaria; un limite {@code null} è aperto.
+     */
+    private static final class Range {
+        private final Object from;
+        private final Object to;
+        private final long rows;
+
+        private Range(Object from, Object to, long rows) {
+            this.from = from;
+            this.to = to;
+            this.rows = rows;
+        }
+
+        private String shape() {
+            return (from == null ? "-" : "F") + (to == null ? "-" : "T");
+        }
+
+        private String where(String primaryKey) {
+            if (primaryKey == null || (from == null && to == null)) return "";
+            String key = "`" + primaryKey + "`";
+            if (to == null) return " WHERE " + key + " >= ?";
+            if (from == null) return " WHERE " + key + " < ?";
+            return " WHERE " + key + " >= ? AND " + key + " < ?";
+        }
+
+        private void bind(PreparedStatement ps, int index) throws SQLException {
+            if (from != null) ps.setObject(index++, from);
+            if (to != null) ps.setObject(index, to);
+        }
+    }
+
+    private static final class Job {
+        private final Progress progress;
+        private final long totalRows;
+        private final AtomicLong rows = new AtomicLong();
+
+        private Job(Progress progress, long totalRows) {
+            this.progress = progress;
+            this.totalRows = totalRows;
+        }
+
+        private void advance(long count) {
+            long done = rows.addAndGet(count);
+            if (progress != null && count > 0) progress.update(done, totalRows);
+        }
+    }
+
+    private static final class Batch {
+        private final List<String> columns;
+        private final List<Object[]> rows;
+
+        private Batch(List<String> columns, List<Object[]> rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    private interface RowFormat {
+        void writeHeader(OutputStream out) throws IOException;
+
+        void writeRow(ByteArrayOutputStream buffer, ResultSet rs) throws SQLException;
+
+        void writeFooter(OutputStream out) throws IOException;
+    }
+
+    private interface RowReader {
+        /**
+         * Fino a {@code size} righe con le stesse colonne, o {@code null} a fine file.
+         */
+        Batch next(int size) throws IOException;
+    }
+
+    private static final class NdjsonFormat implements RowFormat {
+        private final Layout layout;
+
+        private NdjsonFormat(Layout layout) {
+            this.layout = layout;
+        }
+
+        @Override
+        public void writeHeader(OutputStream out) {
+        }
+
+        @Override
+        public void writeRow(ByteArrayOutputStream buffer, ResultSet rs) throws SQLException {
+            JsonObject row = new JsonObject();
+            for (int i = 0; i < layout.columns.size(); i++) {
+                String column = layout.columns.get(i);
+                if (layout.binary.contains(column)) {
+                    byte[] bytes = rs.getBytes(i + 1);
+                    row.add(column, bytes == null ? JsonNull.INSTANCE : new JsonPrimitive(Base64.getEncoder().encodeToString(bytes)));
+                } else {
+                    String value = rs.getString(i + 1);
+                    row.add(column, value == null ? JsonNull.INSTANCE : new JsonPrimitive(value));
+                }
+            }
+            byte[] line = gson.toJson(row).getBytes(StandardCharsets.UTF_8);
+            buffer.write(line, 0, line.length);
+            buffer.write('\n');
+        }
+
+        @Override
+        public void writeFooter(OutputStream out) {
+        }
+    }
+
+    private static final class NdjsonReader implements RowReader {
+        private final BufferedReader reader;
+        private final Layout layout;
+        private JsonObject held;
+
+        private NdjsonReader(InputStream in, Layout layout) {
+            this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            this.layout = layout;
+        }
+
+        @Override
+        public Batch next(int size) throws IOException {
+            List<String> columns = null;
+            List<Object[]> rows = new ArrayList<>();
+            while (rows.size() < size) {
+                JsonObject row = held != null ? held : read();
+                held = null;
+                if (row == null) break;
+                List<String> rowColumns = new ArrayList<>();
+                for (Map.Entry<String, JsonElement> entry : row.entrySet()) {
+                    if (layout.columns.contains(entry.getKey())) rowColumns.add(entry.getKey());
+                }
+                if (rowColumns.isEmpty()) continue;
+                if (columns == null) {
+                    columns = rowColumns;
+                } else if (!columns.equals(rowColumns)) {
+                    // Colonne diverse richiedono un altro statement: la riga apre il batch successivo
+                    held = row;
+                    break;
+                }
+                Object[] values = new Object[columns.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = value(columns.get(i), row.get(columns.get(i)));
+                }
+                rows.add(values);
+            }
+            return rows.isEmpty() ? null : new Batch(columns, rows);
+        }
+
+        private JsonObject read() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) return null;
+            } while (line.isBlank());
+            return gson.fromJson(line, JsonObject.class);
+        }
+
+        private Object value(String column, JsonElement element) {
+            if (element == null || element.isJsonNull()) return null;
+            if (!element.isJsonPrimitive()) return gson.toJson(element);
+            String value = element.getAsString();
+            return layout.binary.contains(column) ? Base64.getDecoder().decode(value) : value;
+        }
+    }
+
+    private static final class BinaryFormat implements RowFormat {
+        private final Layout layout;
+
+        private BinaryFormat(Layout layout) {
+            this.layout = layout;
+        }
+
+        @Override
+        public void writeHeader(OutputStream out) throws IOException {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(BINARY_MAGIC);
+            data.writeShort(layout.columns.size());
+            for (String column : layout.columns) {
+                data.writeUTF(column);
+            }
+            data.flush();
+        }
+
+        @Override
+        public void writeRow(ByteArrayOutputStream buffer, ResultSet rs) throws SQLException {
+            DataOutputStream data = new DataOutputStream(buffer);
+            try {
+                data.writeByte(1);
+                for (int i = 0; i < layout.columns.size(); i++) {
+                    byte[] bytes = layout.binary.contains(layout.columns.get(i)) ? rs.getBytes(i + 1) : utf8(rs.getString(i + 1));
+                    if (bytes == null) {
+                        data.writeInt(-1);
+                    } else {
+                        data.writeInt(bytes.length);
+                        data.write(bytes);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void writeFooter(OutputStream out) throws IOException {
+            out.write(0);
+        }
+
+        private static byte[] utf8(String value) {
+            return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class BinaryReader implements RowReader {
+        private final DataInputStream data;
+        private final Layout layout;
+        private List<String> fileColumns;
+        private List<String> columns;
+        private boolean finished;
+
+        private BinaryReader(InputStream in, Layout layout) {
+            this.data = new DataInputStream(in);
+            this.layout = layout;
+        }
+
+        @Override
+        public Batch next(int size) throws IOException {
+            if (fileColumns == null) readHeader();
+            if (finished) return null;
+            List<Object[]> rows = new ArrayList<>();
+            while (rows.size() < size) {
+                int marker = data.read();
+                if (marker != 1) {
+                    // 0 chiude il file; un file troncato (-1) viene trattato come errore
+                    if (marker != 0) throw new EOFException("File troncato dopo " + rows.size() + " righe dell'ultimo batch");
+                    finished = true;
+                    break;
+                }
+                Object[] values = new Object[columns.size()];
+                int target = 0;
+                for (String column : fileColumns) {
+                    int length = data.readInt();
+                    byte[] bytes = null;
+                    if (length >= 0) {
+                        bytes = new byte[length];
+                        data.readFully(bytes);
+                    }
+                    if (!layout.columns.contains(column)) continue;
+                    values[target++] = bytes == null || layout.binary.contains(column) ? bytes : new String(bytes, StandardCharsets.UTF_8);
+                }
+                rows.add(values);
+            }
+            return rows.isEmpty() ? null : new Batch(columns, rows);
+        }
+
+        private void readHeader() throws IOException {
+            if (data.readInt() != BINARY_MAGIC) throw new IOException("Il file non è un'esportazione binaria di DatabaseManager");
+            int count = data.readUnsignedShort();
+            fileColumns = new ArrayList<>(count);
+            columns = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String column = data.readUTF();
+                fileColumns.add(column);
+                if (layout.columns.contains(column)) columns.add(column);
+            }
+            if (columns.isEmpty()) throw new IOException("Nessuna colonna del file esiste nella tabella");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package dev.ayoangelo.databasemanager.api;
+
+import dev.ayoangelo.databasemanager.utils.Config;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Trasporto di {@link InvalidationBus} su una tabella di changelog in MySQL: ogni server inserisce le
+ * proprie modifiche e legge in polling quelle con id successivo all'ultimo visto. Le righe più vecchie
+ * di {@code invalidation.mysql.retention-seconds} vengono cancellate periodicamente.
+ */
+public class ChangelogTransport implements InvalidationBus.Transport {
+    // Gli id AUTO_INCREMENT possono diventare visibili fuori ordine con inserimenti concorrenti: ogni poll
+    // rilegge anche le ultime OVERLAP righe già viste e le scarta tramite seenIds
+    private static final int OVERLAP = 256;
+    private static final int POLL_LIMIT = 1000;
+    private static final int SEEN_IDS = 4096;
+    private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String databaseName;
+    private final String tableName;
+    private final String insertSql;
+    private final String pollSql;
+    private final String cleanupSql;
+    private final Set<Long> seenIds = new LinkedHashSet<>();
+    private Consumer<InvalidationBus.Change> receiver;
+    private long lastId = -1;
+    private long lastCleanup = System.nanoTime();
+
+    public ChangelogTransport() {
+        this(Config.getData(String.class, "invalidation.mysql.database", "databasemanager"),
+                Config.getData(String.class, "invalidation.mysql.table", "changelog"));
+    }
+
+    public ChangelogTransport(String databaseName, String tableName) {
+        this.databaseName = TableHandle.checkIdentifier(databaseName);
+        this.tableName = TableHandle.checkIdentifier(tableName);
+        String table = "`" + databaseName + "`.`" + tableName + "`";
+        this.insertSql = "INSERT INTO " + table + " (`origin`, `db_name`, `table_name`, `row_key`) VALUES (?, ?, ?, ?)";
+        this.pollSql = "SELECT `id`, `origin`, `db_name`, `table_name`, `row_key` FROM " + table + " WHERE `id` > ? ORDER BY `id` LIMIT " + POLL_LIMIT;
+        this.cleanupSql = "DELETE FROM " + table + " WHERE `created_at` < NOW() - INTERVAL ? SECOND LIMIT 10000";
+    }
+
+    @Override
+    public void start(Consumer<InvalidationBus.Change> receiver) {
+        this.receiver = receiver;
+        DatabaseAPI.createDatabasesIfNotExist(databaseName);
+        String sql = "CREATE TABLE IF NOT EXISTS `" + databaseName + "`.`" + tableName + "` (" +
+                "`id` BIGINT AUTO_INCREMENT PRIMARY KEY, `origin` VARCHAR(36) NOT NULL, " +
+                "`db_name` VARCHAR(64) NOT NULL, `table_name` VARCHAR(64) NOT NULL, `row_key` VARCHAR(255) NULL, " +
+                "`created_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, INDEX (`created_at`))";
+        DatabaseAPI.execute("createTable", databaseName, tableName, 0, conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                return stmt.executeUpdate(sql);
+            }
+        });
+        initLastId();
+    }
+
+    @Override
+    public void publish(List<InvalidationBus.Change> changes) {
+        DatabaseAPI.execute("publishChanges", databaseName, tableName, 0, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
+                for (InvalidationBus.Change change : changes) {
+                    ps.setString(1, change.getOrigin());
+                    ps.setString(2, change.getDatabaseName());
+                    ps.setString(3, change.getTableName());
+                    ps.setString(4, change.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            return changes.size();
+        });
+    }
+
+    @Override
+    public void poll() {
+        if (lastId < 0 && !initLastId()) return;
+        List<InvalidationBus.Change> received = new ArrayList<>();
+        DatabaseAPI.execute("pollChanges", databaseName, tableName, 0, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(pollSql)) {
+                ps.setLong(1, Math.max(0, lastId - OVERLAP));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        long id = rs.getLong("id");
+                        if (!seenIds.add(id)) continue;
+                        lastId = Math.max(lastId, id);
+                        received.add(new InvalidationBus.Change(rs.getString("origin"), rs.getString("db_name"),
+                                rs.getString("table_name"), rs.getString("row_key")));
+                    }
+                }
+            }
+            return received.size();
+        });
+        while (seenIds.size() > SEEN_IDS) {
+            seenIds.remove(seenIds.iterator().next());
+        }
+        received.forEach(receiver);
+
+        long now = System.nanoTime();
+        if (now - lastCleanup > CLEANUP_INTERVAL_NANOS) {
+            lastCleanup = now;
+            int retention = Math.max(10, Config.getData(Integer.class, "invalidation.mysql.retention-seconds", 300));
+            DatabaseAPI.execute("cleanupChanges", databaseName, tableName, 0, conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(cleanupSql)) {
+                    ps.setInt(1, retention);
+                    return ps.executeUpdate();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void stop() {
+        receiver = null;
+    }
+
+    private boolean initLastId() {
+        String sql = "SELECT COALESCE(MAX(`id`), 0) FROM `" + databaseName + "`.`" + tableName + "`";
+        Long max = DatabaseAPI.execute("pollChanges", databaseName, tableName, null, conn -> {
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+        if (max == null) return false;
+        lastId = max;
+        return true;
+    }
+}
@@ -0,0 +1,98 @@
+package dev.ayoangelo.databasemanager.api;
+
+import dev.ayoangelo.databasemanager.utils.Config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker sulle connessioni al primario. Dopo {@code circuit-breaker.failure-threshold} errori
+ * consecutivi nell'ottenere una connessione (o attese più lunghe di {@code slow-call-ms}) il circuito si
+ * apre e per {@code open-ms} ogni chiamata fallisce subito con {@link DatabaseException.Kind#CIRCUIT_OPEN},
+ * invece di restare ferma fino al {@code connection-timeout} del pool. Passato quel tempo una sola
+ * chiamata di prova ({@code HALF_OPEN}) decide se richiudere il circuito o riaprirlo.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Object lock = new Object();
+    private static volatile State state = State.CLOSED;
+    private static volatile int consecutiveFailures;
+    private static long openedAt;
+    private static boolean probing;
+
+    public static boolean isEnabled() {
+        return Config.getData(Boolean.class, "circuit-breaker.enabled", true);
+    }
+
+    public static State getState() {
+        return state;
+    }
+
+    /**
+     * Chiamato prima di chiedere una connessione al pool; lancia un'eccezione se il circuito è aperto.
+     */
+    static void beforeConnect(String operation) throws DatabaseException {
+        if (state == State.CLOSED || !isEnabled()) return;
+        synchronized (lock) {
+            if (state == State.OPEN) {
+                long openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(100, Config.getData(Integer.class, "circuit-breaker.open-ms", 10000)));
+                if (System.nanoTime() - openedAt < openNanos) throw open(operation);
+                state = State.HALF_OPEN;
+                probing = false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probing) throw open(operation);
+                probing = true;
+            }
+        }
+    }
+
+    static void onSuccess(long waitNanos) {
+        if (!isEnabled()) return;
+        if (waitNanos > TimeUnit.MILLISECONDS.toNanos(Config.getData(Integer.class, "circuit-breaker.slow-call-ms", 2000))) {
+            onFailure();
+            return;
+        }
+        if (state == State.CLOSED && consecutiveFailures == 0) return;
+        synchronized (lock) {
+            consecutiveFailures = 0;
+            if (state != State.CLOSED) {
+                state = State.CLOSED;
+                probing = false;
+                DatabaseMetrics.logger().info("Database di nuovo raggiungibile, circuit breaker chiuso");
+            }
+        }
+    }
+
+    static void onFailure() {
+        if (!isEnabled()) return;
+        synchronized (lock) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= Math.max(1, Config.getData(Integer.class, "circuit-breaker.failure-threshold", 5)))) {
+                if (state == State.CLOSED) {
+                    DatabaseMetrics.logger().warning("Database non raggiungibile (" + consecutiveFailures + " errori consecutivi), circuit breaker aperto: le chiamate falliranno subito");
+                }
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+                probing = false;
+            }
+        }
+    }
+
+    /**
+     * Richiude il circuito, ad esempio dopo aver cambiato la configurazione del database.
+     */
+    public static void reset() {
+        synchronized (lock) {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            probing = false;
+        }
+    }
+
+    private static DatabaseException open(String operation) {
+        return new DatabaseException(DatabaseException.Kind.CIRCUIT_OPEN, operation, "Circuit breaker aperto: database non raggiungibile");
+    }
+}
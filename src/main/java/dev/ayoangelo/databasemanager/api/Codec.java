@@ -0,0 +1,26 @@
+package dev.ayoangelo.databasemanager.api;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converte un oggetto nella stringa salvata nella colonna {@code value} e viceversa.
+ * Le implementazioni registrate in {@link Codecs} sostituiscono la serializzazione JSON di default.
+ */
+public interface Codec<T> {
+
+    String encode(T value);
+
+    T decode(String data);
+
+    /**
+     * Usati dalle tabelle binarie. Di default sono la stringa di {@link #encode} in UTF-8, i codec
+     * con una rappresentazione binaria più compatta possono sovrascriverli.
+     */
+    default byte[] encodeBytes(T value) {
+        return encode(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    default T decodeBytes(byte[] data) {
+        return decode(new String(data, StandardCharsets.UTF_8));
+    }
+}
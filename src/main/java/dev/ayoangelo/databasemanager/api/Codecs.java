@@ -0,0 +1,113 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro dei {@link Codec} per tipo. Se per un tipo non è stato registrato nulla viene creato,
+ * una sola volta, un codec JSON basato sul {@link TypeAdapter} di Gson per quel tipo esatto,
+ * generici compresi (un {@code TypeToken<List<UUID>>} torna davvero una lista di UUID).
+ */
+public class Codecs {
+    private static final Gson gson = new Gson();
+    private static final Map<Type, Codec<?>> codecs = new ConcurrentHashMap<>();
+    private static final Codec<List<String>> STRING_LIST = new StringListCodec();
+
+    public static <T> void register(Class<T> type, Codec<T> codec) {
+        codecs.put(type, codec);
+    }
+
+    public static <T> void register(TypeToken<T> type, Codec<T> codec) {
+        codecs.put(type.getType(), codec);
+    }
+
+    public static <T> Codec<T> get(Class<T> type) {
+        return get(TypeToken.get(type));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Codec<T> get(TypeToken<T> type) {
+        return (Codec<T>) codecs.computeIfAbsent(type.getType(), t -> new GsonCodec<>(gson.getAdapter(type)));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Codec<Object> forExample(Object example) {
+        return (Codec<Object>) get(example.getClass());
+    }
+
+    public static String encode(Object value) {
+        if (value == null) return "null";
+        return forExample(value).encode(value);
+    }
+
+    public static Codec<List<String>> stringList() {
+        return STRING_LIST;
+    }
+
+    public static Gson gson() {
+        return gson;
+    }
+
+    private static final class StringListCodec implements Codec<List<String>> {
+        private final Codec<List<String>> json = get(new TypeToken<List<String>>() {});
+
+        @Override
+        public String encode(List<String> value) {
+            return json.encode(value);
+        }
+
+        // Oltre al JSON legge le liste salvate come testo da saveStringList ("a, b, c")
+        @Override
+        public List<String> decode(String data) {
+            if (data.trim().startsWith("[")) return json.decode(data);
+            return new ArrayList<>(Arrays.asList(data.split(",\\s*")));
+        }
+
+        @Override
+        public byte[] encodeBytes(List<String> value) {
+            return BinaryFormat.encodeStringList(value);
+        }
+
+        @Override
+        public List<String> decodeBytes(byte[] data) {
+            return BinaryFormat.decodeStringList(data);
+        }
+    }
+
+    private static final class GsonCodec<T> implements Codec<T> {
+        private final TypeAdapter<T> adapter;
+
+        private GsonCodec(TypeAdapter<T> adapter) {
+            this.adapter = adapter;
+        }
+
+        @Override
+        public String encode(T value) {
+            return adapter.toJson(value);
+        }
+
+        @Override
+        public T decode(String data) {
+            // Lenient come Gson#fromJson, per continuare a leggere i valori salvati come testo semplice
+            JsonReader reader = new JsonReader(new StringReader(data));
+            reader.setLenient(true);
+            try {
+                return adapter.read(reader);
+            } catch (IOException e) {
+                throw new JsonParseException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import dev.ayoangelo.databasemanager.utils.Config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Impostazioni dei pool lette da {@code config.yml}: dimensione e timeout da {@code pool:}, proprietà
+ * del driver MySQL da {@code driver:}. Il profilo {@code driver.profile} fornisce i valori di partenza
+ * ({@code default} o {@code high-throughput}); le singole chiavi scritte in config hanno la precedenza.
+ */
+public class DataSourceSettings {
+    public static final int DEFAULT_POOL_SIZE = 10;
+    private static final String HIGH_THROUGHPUT = "high-throughput";
+
+    // chiave in config, proprietà del driver, valore nel profilo default, valore nel profilo high-throughput
+    private static final String[][] DRIVER_PROPERTIES = {
+            {"cache-prep-stmts", "cachePrepStmts", "true", "true"},
+            {"prep-stmt-cache-size", "prepStmtCacheSize", "250", "500"},
+            {"prep-stmt-cache-sql-limit", "prepStmtCacheSqlLimit", "2048", "2048"},
+            {"use-server-prep-stmts", "useServerPrepStmts", "false", "true"},
+            {"rewrite-batched-statements", "rewriteBatchedStatements", "true", "true"},
+            {"use-cursor-fetch", "useCursorFetch", "true", "true"},
+            {"use-compression", "useCompression", "false", "false"},
+            {"cache-result-set-metadata", "cacheResultSetMetadata", "false", "true"},
+            {"cache-server-configuration", "cacheServerConfiguration", "false", "true"},
+            {"elide-set-auto-commits", "elideSetAutoCommits", "false", "true"},
+            {"use-local-session-state", "useLocalSessionState", "false", "true"},
+            {"maintain-time-stats", "maintainTimeStats", "true", "false"},
+    };
+
+    public static boolean isHighThroughput() {
+        return HIGH_THROUGHPUT.equalsIgnoreCase(Config.getData(String.class, "driver.profile", "default"));
+    }
+
+    public static int poolSize() {
+        return Math.max(1, Config.getData(Integer.class, "pool-size", DEFAULT_POOL_SIZE));
+    }
+
+    /**
+     * Dimensione suggerita dalla formula di HikariCP, {@code core * 2 + 1}, usando i core di questa
+     * macchina come stima di quelli del database.
+     */
+    public static int recommendedPoolSize() {
+        return Runtime.getRuntime().availableProcessors() * 2 + 1;
+    }
+
+    /**
+     * Senza {@code pool.minimum-idle} il profilo high-throughput tiene il pool a dimensione fissa, come
+     * consigliato da HikariCP; il profilo default ne tiene aperte al massimo 10.
+     */
+    static int minimumIdle(int poolSize) {
+        int fallback = isHighThroughput() ? poolSize : Math.min(poolSize, 10);
+        return Math.max(0, Math.min(poolSize, Config.getData(Integer.class, "pool.minimum-idle", fallback)));
+    }
+
+    static void apply(HikariConfig config, String jdbcUrl, int poolSize) {
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(minimumIdle(poolSize));
+        config.setConnectionTimeout(Config.getData(Integer.class, "pool.connection-timeout", 5000));
+        config.setIdleTimeout(Config.getData(Integer.class, "pool.idle-timeout", 600000));
+        config.setMaxLifetime(Config.getData(Integer.class, "pool.max-lifetime", 1800000));
+        config.setKeepaliveTime(Config.getData(Integer.class, "pool.keepalive-time", 120000));
+        config.setValidationTimeout(Config.getData(Integer.class, "pool.validation-timeout", 5000));
+        config.setLeakDetectionThreshold(Config.getData(Integer.class, "pool.leak-detection-threshold", 0));
+        driverProperties(jdbcUrl).forEach(config::addDataSourceProperty);
+    }
+
+    /**
+     * Applica a un pool già avviato i valori modificabili a caldo. Keepalive e proprietà del driver
+     * richiedono un pool nuovo, vedi {@link #requiresNewPool}.
+     */
+    static void apply(HikariConfigMXBean pool, int poolSize) {
+        // L'ordine evita che minimum-idle superi, anche per un attimo, la dimensione massima
+        if (poolSize >= pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(poolSize);
+            pool.setMinimumIdle(minimumIdle(poolSize));
+        } else {
+            pool.setMinimumIdle(minimumIdle(poolSize));
+            pool.setMaximumPoolSize(poolSize);
+        }
+        pool.setConnectionTimeout(Config.getData(Integer.class, "pool.connection-timeout", 5000));
+        pool.setIdleTimeout(Config.getData(Integer.class, "pool.idle-timeout", 600000));
+        pool.setMaxLifetime(Config.getData(Integer.class, "pool.max-lifetime", 1800000));
+        pool.setValidationTimeout(Config.getData(Integer.class, "pool.validation-timeout", 5000));
+        pool.setLeakDetectionThreshold(Config.getData(Integer.class, "pool.leak-detection-threshold", 0));
+    }
+
+    static boolean requiresNewPool(HikariDataSource current) {
+        if (current.getKeepaliveTime() != Config.getData(Integer.class, "pool.keepalive-time", 120000)) return true;
+        Properties properties = current.getDataSourceProperties();
+        for (Map.Entry<String, String> property : driverProperties(current.getJdbcUrl()).entrySet()) {
+            if (!property.getValue().equals(String.valueOf(properties.get(property.getKey())))) return true;
+        }
+        return false;
+    }
+
+    static Map<String, String> driverProperties(String jdbcUrl) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        // Le proprietà sono specifiche di Connector/J: altri driver (es. H2 nei benchmark) le rifiuterebbero
+        if (!jdbcUrl.startsWith("jdbc:mysql:")) return properties;
+        int profile = isHighThroughput() ? 3 : 2;
+        for (String[] property : DRIVER_PROPERTIES) {
+            Object value = Config.getData(Object.class, "driver." + property[0], null);
+            properties.put(property[1], value == null ? property[profile] : String.valueOf(value));
+        }
+        return properties;
+    }
+
+    /**
+     * Confronta {@code pool-size} con i core disponibili e con le connessioni che MySQL può ancora
+     * accettare ({@code max_connections} meno quelle aperte dagli altri client), e avvisa nel log se
+     * la dimensione non è sostenibile.
+     */
+    static void checkPoolSize(HikariDataSource dataSource) {
+        int poolSize = dataSource.getMaximumPoolSize();
+        int recommended = recommendedPoolSize();
+        if (poolSize > recommended) {
+            DatabaseMetrics.logger().warning("pool-size " + poolSize + " supera le " + recommended + " connessioni consigliate per "
+                    + Runtime.getRuntime().availableProcessors() + " core (core * 2 + 1): oltre questa soglia le query si contendono CPU e lock senza aumentare il throughput");
+        }
+        if (!dataSource.getJdbcUrl().startsWith("jdbc:mysql:")) return;
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            int maxConnections;
+            int connected;
+            try (ResultSet rs = stmt.executeQuery("SELECT @@max_connections")) {
+                if (!rs.next()) return;
+                maxConnections = rs.getInt(1);
+            }
+            try (ResultSet rs = stmt.executeQuery("SHOW GLOBAL STATUS LIKE 'Threads_connected'")) {
+                if (!rs.next()) return;
+                connected = rs.getInt(2);
+            }
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            int own = pool == null ? 1 : pool.getTotalConnections();
+            int available = maxConnections - Math.max(0, connected - own);
+            if (poolSize > available) {
+                DatabaseMetrics.logger().warning("pool-size " + poolSize + " supera le connessioni disponibili su MySQL: max_connections "
+                        + maxConnections + ", già usate da altri client " + Math.max(0, connected - own)
+                        + ". Riduci pool-size o aumenta max_connections");
+            }
+        } catch (SQLException e) {
+            DatabaseMetrics.logger().warning("Impossibile leggere max_connections da MySQL: " + e.getMessage());
+        }
+    }
+}
@@ -1,411 +1,1781 @@
 package dev.ayoangelo.databasemanager.api;
 
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import dev.ayoangelo.databasemanager.utils.Config;
 
-import java.lang.reflect.Type;
 import java.sql.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DatabaseAPI {
-    private static final String JDBC_URL = "jdbc:mysql://" + Config.getData(String.class, "ip", "localhost") + ":" + Config.getData(String.class, "port", "3306") + "/";
-    private static final String USER = Config.getData(String.class, "user", "root");
-    private static final String PASSWORD = Config.getData(String.class, "password", "password");
-    private static final int POOL_SIZE = Config.getData(Integer.class, "pool-size", 50);
-    private static final HikariDataSource dataSource;
-    private static final Gson gson = new Gson();
+    private static final Object dataSourceLock = new Object();
+    private static volatile HikariDataSource dataSource;
+    private static volatile boolean closed;
+    // Dimensioni fisse delle IN-list: i chunk vengono riempiti ripetendo l'ultima chiave, così il
+    // driver riusa sempre gli stessi pochi statement dalla cache invece di prepararne uno per ogni N
+    static final int[] IN_LIST_SIZES = {1, 4, 16, 64, 256};
+    static final String[] IN_LIST_PLACEHOLDERS = new String[IN_LIST_SIZES[IN_LIST_SIZES.length - 1] + 1];
+    private static final Map<String, Map<String, TableHandle>> tables = new ConcurrentHashMap<>();
+    private static final ThreadLocal<DatabaseException> lastError = new ThreadLocal<>();
+    private static final Map<String, String> KEY_VALUE_COLUMNS = columns("key", "varchar", "value", "text");
+    private static final Map<String, String> ID_VALUE_COLUMNS = columns("id", "int", "value", "text");
+    private static final Map<String, String> KEY_BINARY_COLUMNS = columns("key", "varchar", "value", "mediumblob");
+    private static final Map<String, String> KEY_HASHED_COLUMNS = columns("key", "varchar", "value", "text", TableHandle.VALUE_HASH, "binary");
+    private static final Map<String, String> ID_HASHED_COLUMNS = columns("id", "int", "value", "text", TableHandle.VALUE_HASH, "binary");
+    static final Map<String, String> PARTITIONED_COLUMNS = columns("id", "bigint", "value", "text", "created", "datetime");
+    private static final String VALUE_HASH_COLUMN = "`" + TableHandle.VALUE_HASH + "` BINARY(16) AS (UNHEX(MD5(`value`))) STORED";
+    private static final Pattern JSON_INDEX_TYPE = Pattern.compile("(?i)VARCHAR\\([0-9]{1,4}\\)|BIGINT|INT|DOUBLE|DECIMAL\\([0-9]{1,2},[0-9]{1,2}\\)");
 
     static {
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl(JDBC_URL);
-        config.setUsername(USER);
-        config.setPassword(PASSWORD);
-        config.setMaximumPoolSize(POOL_SIZE);
-        config.addDataSourceProperty("cachePrepStmts", "true");
-        config.addDataSourceProperty("prepStmtCacheSize", "250");
-        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        dataSource = new HikariDataSource(config);
+        for (int size : IN_LIST_SIZES) {
+            IN_LIST_PLACEHOLDERS[size] = String.join(",", Collections.nCopies(size, "?"));
+        }
     }
 
+    /**
+     * Connessione dal pool del primario. Se il {@link CircuitBreaker} è aperto lancia subito un
+     * {@link DatabaseException} invece di attendere il {@code connection-timeout}.
+     */
     public static Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        HikariDataSource source = getDataSource();
+        CircuitBreaker.beforeConnect("getConnection");
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Connection conn = source.getConnection();
+            failed = false;
+            return conn;
+        } finally {
+            long wait = System.nanoTime() - start;
+            DatabaseMetrics.recordConnectionWait(wait, failed);
+            if (failed) CircuitBreaker.onFailure();
+            else CircuitBreaker.onSuccess(wait);
+        }
+    }
+
+    static HikariPoolMXBean getPoolMXBean() {
+        HikariDataSource current = dataSource;
+        return current == null ? null : current.getHikariPoolMXBean();
+    }
+
+    /**
+     * Sostituisce il pool letto da {@code config.yml} con uno verso un altro database, ad esempio
+     * un H2 in modalità MySQL per i benchmark. Il pool precedente, se esiste, viene chiuso.
+     */
+    public static void configure(String jdbcUrl, String user, String password, int poolSize) {
+        replaceDataSource(createDataSource("DatabaseManager", jdbcUrl, user, password, poolSize, false));
+    }
+
+    /**
+     * Crea il pool dalla configurazione già caricata. Lo chiama {@code DatabaseManager.onEnable()} dopo
+     * {@code Config.setup}; il pool non apre connessioni finché non servono o fino a {@link #warmUp()}.
+     */
+    public static void init() {
+        synchronized (dataSourceLock) {
+            closed = false;
+            if (dataSource == null) dataSource = createPrimaryDataSource();
+        }
+        CircuitBreaker.reset();
+        WriteBehindQueue.open();
+    }
+
+    /**
+     * Apre in background {@code pool.minimum-idle} connessioni e carica il catalogo dello schema,
+     * così le prime operazioni dopo l'avvio non pagano l'apertura delle connessioni. Controlla anche che
+     * {@code pool-size} sia sostenibile per la macchina e per MySQL (vedi {@link DataSourceSettings#checkPoolSize}).
+     */
+    public static CompletableFuture<Void> warmUp() {
+        return AsyncDatabaseAPI.run(() -> {
+            long start = System.nanoTime();
+            HikariDataSource current = dataSource;
+            if (current == null) return;
+            int target = Math.min(current.getMaximumPoolSize(), current.getMinimumIdle());
+            List<Connection> held = new ArrayList<>();
+            try {
+                while (held.size() < target) {
+                    held.add(getConnection());
+                }
+            } catch (SQLException e) {
+                DatabaseMetrics.logger().warning("Warm-up del pool interrotto: " + e.getMessage());
+            } finally {
+                closeQuietly(held.toArray(new AutoCloseable[0]));
+            }
+            if (!held.isEmpty()) DataSourceSettings.checkPoolSize(current);
+            if (SchemaCatalog.isEnabled()) SchemaCatalog.refresh();
+            DatabaseMetrics.logger().info("Pool pronto: " + held.size() + " connessioni in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        });
+    }
+
+    /**
+     * Ricarica {@code config.yml}. Dimensione del pool e timeout vengono applicati al pool esistente
+     * senza interrompere le connessioni in uso; se cambiano host, porta, utente, password, keepalive o
+     * proprietà del driver il pool viene sostituito. Anche i pool delle repliche vengono ricreati.
+     */
+    public static void reload() {
+        Config.reload();
+        HikariDataSource current = dataSource;
+        if (current != null && !closed) {
+            String user = Config.getData(String.class, "user", "root");
+            String password = Config.getData(String.class, "password", "password");
+            if (!primaryJdbcUrl().equals(current.getJdbcUrl()) || !user.equals(current.getUsername()) || !password.equals(current.getPassword())) {
+                replaceDataSource(createPrimaryDataSource());
+                DatabaseMetrics.logger().info("Connessione al database cambiata, pool ricreato");
+            } else if (DataSourceSettings.requiresNewPool(current)) {
+                replaceDataSource(createPrimaryDataSource());
+                DatabaseMetrics.logger().info("Keepalive o proprietà del driver cambiati, pool ricreato");
+            } else {
+                DataSourceSettings.apply(current.getHikariConfigMXBean(), DataSourceSettings.poolSize());
+            }
+            ReplicaRouter.close();
+        }
+        AsyncDatabaseAPI.resize();
+        DatabaseMetrics.logger().info("Configurazione del database ricaricata");
+    }
+
+    /**
+     * Chiude il pool principale e quelle delle repliche. Le chiamate successive falliscono finché
+     * non viene richiamato {@link #init()} o {@link #configure}.
+     */
+    public static void close() {
+        HikariDataSource previous;
+        synchronized (dataSourceLock) {
+            closed = true;
+            previous = dataSource;
+            dataSource = null;
+        }
+        ReplicaRouter.close();
+        SchemaCatalog.clear();
+        if (previous != null) previous.close();
+    }
+
+    static boolean isClosed() {
+        return closed;
+    }
+
+    private static void replaceDataSource(HikariDataSource replacement) {
+        HikariDataSource previous;
+        synchronized (dataSourceLock) {
+            closed = false;
+            previous = dataSource;
+            dataSource = replacement;
+        }
+        CircuitBreaker.reset();
+        SchemaCatalog.clear();
+        ReplicaRouter.close();
+        if (previous != null) previous.close();
+    }
+
+    private static HikariDataSource getDataSource() throws SQLException {
+        HikariDataSource current = dataSource;
+        if (current != null) return current;
+        synchronized (dataSourceLock) {
+            if (dataSource == null) {
+                if (closed) throw new DatabaseException(DatabaseException.Kind.CLOSED, "getConnection", "DatabaseManager è stato disattivato, pool chiuso");
+                // Senza config il pool partirebbe con i valori di default: meglio fallire subito
+                if (!Config.isLoaded()) throw new DatabaseException(DatabaseException.Kind.CLOSED, "getConnection", "DatabaseAPI usata prima dell'abilitazione di DatabaseManager (config non caricata)");
+                dataSource = createPrimaryDataSource();
+            }
+            return dataSource;
+        }
+    }
+
+    private static String primaryJdbcUrl() {
+        return "jdbc:mysql://" + Config.getData(String.class, "ip", "localhost") + ":" + Config.getData(String.class, "port", "3306") + "/";
+    }
+
+    private static HikariDataSource createPrimaryDataSource() {
+        return createDataSource("DatabaseManager", primaryJdbcUrl(),
+                Config.getData(String.class, "user", "root"),
+                Config.getData(String.class, "password", "password"),
+                DataSourceSettings.poolSize(), false);
+    }
+
+    static HikariDataSource createDataSource(String poolName, String jdbcUrl, String user, String password, int poolSize, boolean readOnly) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(user);
+        config.setPassword(password);
+        DataSourceSettings.apply(config, jdbcUrl, poolSize);
+        // Il costruttore non prova a connettersi: un database irraggiungibile non blocca l'avvio del server
+        config.setInitializationFailTimeout(-1);
+        config.setPoolName(poolName);
+        config.setReadOnly(readOnly);
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Restituisce il {@link TableHandle} della tabella, creandolo alla prima richiesta.
+     * Lancia {@link IllegalArgumentException} se il nome del database o della tabella non è valido.
+     */
+    public static TableHandle table(String databaseName, String tableName) {
+        Map<String, TableHandle> byTable = tables.get(databaseName);
+        if (byTable == null) {
+            TableHandle.checkIdentifier(databaseName);
+            byTable = tables.computeIfAbsent(databaseName, db -> new ConcurrentHashMap<>());
+        }
+        TableHandle handle = byTable.get(tableName);
+        if (handle == null) handle = byTable.computeIfAbsent(tableName, tbl -> new TableHandle(databaseName, tbl));
+        return handle;
+    }
+
+    /**
+     * Inizia una {@link Query} sulla tabella: filtri, ordinamento e limite vengono eseguiti da MySQL.
+     */
+    public static Query select(String databaseName, String tableName) {
+        return table(databaseName, tableName).select();
     }
 
     public static void createDatabasesIfNotExist(String... databaseName) {
         String sql = "CREATE DATABASE IF NOT EXISTS `%s`";
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
-            for (String db : databaseName) {
-                stmt.executeUpdate(String.format(sql, db));
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        for (String db : databaseName) {
+            TableHandle.checkIdentifier(db);
+            if (SchemaCatalog.databaseExist(db) == Boolean.TRUE) continue;
+            if (executeDdl("createDatabase", db, null, String.format(sql, db))) SchemaCatalog.databaseCreated(db);
         }
     }
 
     public static void createTablesIfNotExist(String databaseName, String... tableName) {
         String sql = "CREATE TABLE IF NOT EXISTS `%s`.`%s` (`key` VARCHAR(255) PRIMARY KEY, `value` TEXT)";
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
-            for (String tbl : tableName) {
-                stmt.executeUpdate(String.format(sql, databaseName, tbl));
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        for (String tbl : tableName) {
+            table(databaseName, tbl);
+            createTable(databaseName, tbl, String.format(sql, databaseName, tbl), KEY_VALUE_COLUMNS);
         }
     }
 
     public static void createTablesWithoutKeyIfNotExist(String databaseName, String... tableName) {
         String sql = "CREATE TABLE IF NOT EXISTS `%s`.`%s` (id INT AUTO_INCREMENT PRIMARY KEY, `value` TEXT)";
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
-            for (String tbl : tableName) {
-                stmt.executeUpdate(String.format(sql, databaseName, tbl));
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        for (String tbl : tableName) {
+            table(databaseName, tbl);
+            createTable(databaseName, tbl, String.format(sql, databaseName, tbl), ID_VALUE_COLUMNS);
+        }
+    }
+
+    /**
+     * Come {@link #createTablesWithoutKeyIfNotExist} ma partizionate per giorno di inserimento (colonna
+     * {@code created}), per log e storici che crescono senza limite. Le righe più vecchie di
+     * {@code retentionDays} giorni (0 = mai) vengono rimosse a partizioni intere da {@link PartitionedTables};
+     * {@link #getRecentStrings} legge solo le partizioni recenti. Le tabelle già esistenti non vengono convertite.
+     */
+    public static void createPartitionedTablesIfNotExist(String databaseName, int retentionDays, String... tableName) {
+        for (String tbl : tableName) {
+            table(databaseName, tbl);
+            createTable(databaseName, tbl, PartitionedTables.createSql(databaseName, tbl), PARTITIONED_COLUMNS);
+            PartitionedTables.register(databaseName, tbl, retentionDays);
+        }
+    }
+
+    /**
+     * Come {@link #createTablesIfNotExist} ma con la colonna generata {@code value_hash} (MD5 di {@code value})
+     * indicizzata: {@code hasString}, {@code hasObject} e {@code removeString} diventano ricerche sull'indice
+     * invece di scansioni dell'intera tabella.
+     */
+    public static void createHashedTablesIfNotExist(String databaseName, String... tableName) {
+        String sql = "CREATE TABLE IF NOT EXISTS `%s`.`%s` (`key` VARCHAR(255) PRIMARY KEY, `value` TEXT, " + VALUE_HASH_COLUMN + ", INDEX (`" + TableHandle.VALUE_HASH + "`))";
+        for (String tbl : tableName) {
+            table(databaseName, tbl);
+            createTable(databaseName, tbl, String.format(sql, databaseName, tbl), KEY_HASHED_COLUMNS);
+        }
+    }
+
+    public static void createHashedTablesWithoutKeyIfNotExist(String databaseName, String... tableName) {
+        String sql = "CREATE TABLE IF NOT EXISTS `%s`.`%s` (id INT AUTO_INCREMENT PRIMARY KEY, `value` TEXT, " + VALUE_HASH_COLUMN + ", INDEX (`" + TableHandle.VALUE_HASH + "`))";
+        for (String tbl : tableName) {
+            table(databaseName, tbl);
+            createTable(databaseName, tbl, String.format(sql, databaseName, tbl), ID_HASHED_COLUMNS);
+        }
+    }
+
+    /**
+     * Aggiunge {@code value_hash} e il relativo indice a una tabella già esistente. L'{@code ALTER TABLE}
+     * ricostruisce la tabella: su tabelle grandi va eseguito fuori dal thread principale.
+     */
+    public static void addValueHashIndex(String databaseName, String tableName) {
+        TableHandle handle = table(databaseName, tableName);
+        if (columnNames(handle).contains(TableHandle.VALUE_HASH)) return;
+        String sql = "ALTER TABLE `" + databaseName + "`.`" + tableName + "` ADD COLUMN " + VALUE_HASH_COLUMN + ", ADD INDEX (`" + TableHandle.VALUE_HASH + "`)";
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (executeDdl("addValueHashIndex", databaseName, tableName, sql)) {
+            handle.columnNames = null;
+            SchemaCatalog.tableAltered(databaseName, tableName);
+        }
+    }
+
+    /**
+     * Indicizza un campo degli oggetti salvati con {@code saveData}: aggiunge una colonna generata virtuale
+     * con il valore di {@code path} (es. {@code $.name}) e un indice su di essa, così {@link #getKeysByJson}
+     * diventa una ricerca sull'indice. {@code sqlType} è il tipo della colonna ({@code VARCHAR(n)}, {@code INT},
+     * {@code BIGINT}, {@code DOUBLE} o {@code DECIMAL(p,s)}; per i booleani {@code VARCHAR(5)}) e deve poter
+     * contenere tutti i valori del campo, altrimenti MySQL rifiuta le scritture in strict mode.
+     */
+    public static void addJsonIndex(String databaseName, String tableName, String path, String sqlType) {
+        TableHandle handle = table(databaseName, tableName);
+        String column = TableHandle.jsonColumnName(path);
+        if (sqlType == null || !JSON_INDEX_TYPE.matcher(sqlType).matches()) {
+            throw new IllegalArgumentException("Tipo non supportato per un indice JSON: " + sqlType);
+        }
+        if (columnNames(handle).contains(column)) return;
+        String sql = "ALTER TABLE `" + databaseName + "`.`" + tableName + "` ADD COLUMN `" + column + "` " + sqlType +
+                " AS (IF(JSON_VALID(`value`), JSON_UNQUOTE(JSON_EXTRACT(`value`, '" + path + "')), NULL)) VIRTUAL, ADD INDEX (`" + column + "`)";
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (executeDdl("addJsonIndex", databaseName, tableName, sql)) {
+            handle.columnNames = null;
+            SchemaCatalog.tableAltered(databaseName, tableName);
         }
     }
 
     public static void createMultiColumnTableIfNotExist(String databaseName, String tableName, String... columns) {
+        table(databaseName, tableName);
+        if (SchemaCatalog.tableExist(databaseName, tableName) == Boolean.TRUE) return;
+        Map<String, String> types = new LinkedHashMap<>();
+        types.put("key", "varchar");
+        for (String column : columns) types.put(column, "text");
         StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS `" + databaseName + "`.`" + tableName + "` (`key` VARCHAR(255), ");
         for (int i = 0; i < columns.length; i++) {
             sql.append("`" + columns[i] + "` TEXT");
             if (i < columns.length - 1) sql.append(", ");
         }
         sql.append(", PRIMARY KEY(`key`))");
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate(sql.toString());
-        } catch (SQLException e) {
-            e.printStackTrace();
+        createTable(databaseName, tableName, sql.toString(), types);
+    }
+
+    public static void createBinaryTablesIfNotExist(String databaseName, String... tableName) {
+        String sql = "CREATE TABLE IF NOT EXISTS `%s`.`%s` (`key` VARCHAR(255) PRIMARY KEY, `value` MEDIUMBLOB)";
+        for (String tbl : tableName) {
+            table(databaseName, tbl);
+            createTable(databaseName, tbl, String.format(sql, databaseName, tbl), KEY_BINARY_COLUMNS);
+        }
+    }
+
+    public static void createBinaryMultiColumnTableIfNotExist(String databaseName, String tableName, String... columns) {
+        table(databaseName, tableName);
+        if (SchemaCatalog.tableExist(databaseName, tableName) == Boolean.TRUE) return;
+        Map<String, String> types = new LinkedHashMap<>();
+        types.put("key", "varchar");
+        for (String column : columns) types.put(column, "mediumblob");
+        StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS `" + databaseName + "`.`" + tableName + "` (`key` VARCHAR(255), ");
+        for (String column : columns) {
+            sql.append("`").append(column).append("` MEDIUMBLOB, ");
+        }
+        sql.append("PRIMARY KEY(`key`))");
+        createTable(databaseName, tableName, sql.toString(), types);
+    }
+
+    private static void createTable(String databaseName, String tableName, String sql, Map<String, String> columns) {
+        columns.keySet().forEach(TableHandle::checkIdentifier);
+        if (SchemaCatalog.tableExist(databaseName, tableName) == Boolean.TRUE) return;
+        if (executeDdl("createTable", databaseName, tableName, sql)) {
+            table(databaseName, tableName).columnNames = null;
+            SchemaCatalog.tableCreated(databaseName, tableName, columns);
         }
     }
 
+    /**
+     * Nomi delle colonne della tabella, dal catalogo dello schema o, se non disponibile, da
+     * {@code INFORMATION_SCHEMA} (letti una volta e tenuti nel {@link TableHandle}).
+     */
+    static Set<String> columnNames(TableHandle handle) {
+        Map<String, String> known = SchemaCatalog.getColumns(handle.getDatabaseName(), handle.getTableName());
+        if (known != null) return known.keySet();
+        Set<String> cached = handle.columnNames;
+        if (cached != null) return cached;
+        String sql = "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?";
+        Set<String> columns = execute("getColumns", handle.getDatabaseName(), handle.getTableName(), null, conn -> {
+            Set<String> result = new HashSet<>();
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, handle.getDatabaseName());
+                ps.setString(2, handle.getTableName());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        result.add(rs.getString("COLUMN_NAME"));
+                    }
+                }
+            }
+            return result;
+        });
+        if (columns == null) return Collections.emptySet();
+        // Una tabella non ancora creata non va memorizzata: le colonne arriveranno con la create
+        if (!columns.isEmpty()) handle.columnNames = Collections.unmodifiableSet(columns);
+        return columns;
+    }
+
+    static boolean isValueHashed(TableHandle handle) {
+        return columnNames(handle).contains(TableHandle.VALUE_HASH);
+    }
+
+    private static boolean executeDdl(String operation, String databaseName, String tableName, String sql) {
+        return execute(operation, databaseName, tableName, false, conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(sql);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Converte in place le colonne {@code TEXT} di una tabella in {@code MEDIUMBLOB} ({@code LONGBLOB} per
+     * le {@code LONGTEXT}). I byte esistenti restano invariati e vengono letti come valori non compressi;
+     * la compressione viene applicata man mano che le righe vengono riscritte.
+     */
+    public static void migrateTableToBinary(String databaseName, String tableName) {
+        String sql = "SELECT COLUMN_NAME, DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? " +
+                "AND DATA_TYPE IN ('tinytext', 'text', 'mediumtext', 'longtext')";
+        table(databaseName, tableName);
+        WriteBehindQueue.flush(databaseName, tableName);
+        try {
+            execute("migrateTableToBinary", databaseName, tableName, 0, conn -> {
+                List<String> changes = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setString(1, databaseName);
+                    ps.setString(2, tableName);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String type = rs.getString("DATA_TYPE").equalsIgnoreCase("longtext") ? "LONGBLOB" : "MEDIUMBLOB";
+                            changes.add("MODIFY `" + rs.getString("COLUMN_NAME") + "` " + type);
+                        }
+                    }
+                }
+                if (changes.isEmpty()) return 0;
+                try (Statement stmt = conn.createStatement()) {
+                    return stmt.executeUpdate("ALTER TABLE `" + databaseName + "`.`" + tableName + "` " + String.join(", ", changes));
+                }
+            });
+        } finally {
+            writtenAll(databaseName, tableName);
+            SchemaCatalog.tableAltered(databaseName, tableName);
+        }
+    }
 
     public static boolean databaseExist(String databaseName) {
+        Boolean known = SchemaCatalog.databaseExist(databaseName);
+        if (known != null) return known;
         String sql = "SELECT SCHEMA_NAME FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME = ?";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, databaseName);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+        return execute("databaseExist", databaseName, null, false, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, databaseName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next();
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return false;
+        });
     }
 
     public static boolean tableExist(String databaseName, String tableName) {
+        Boolean known = SchemaCatalog.tableExist(databaseName, tableName);
+        if (known != null) return known;
         String sql = "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, databaseName);
-            ps.setString(2, tableName);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+        return execute("tableExist", databaseName, tableName, false, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, databaseName);
+                ps.setString(2, tableName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next();
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return false;
+        });
     }
 
     public static void deleteDatabasesIfExist(String... databaseName) {
         String sql = "DROP DATABASE IF EXISTS `%s`";
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
-            for (String db : databaseName) {
-                stmt.executeUpdate(String.format(sql, db));
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        for (String db : databaseName) {
+            TableHandle.checkIdentifier(db);
+            if (SchemaCatalog.databaseExist(db) == Boolean.FALSE) continue;
+            if (executeDdl("deleteDatabase", db, null, String.format(sql, db))) SchemaCatalog.databaseDropped(db);
         }
     }
 
     public static void deleteTablesIfExist(String databaseName, String... tableName) {
         String sql = "DROP TABLE IF EXISTS `%s`.`%s`";
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
-            for (String tbl : tableName) {
-                stmt.executeUpdate(String.format(sql, databaseName, tbl));
+        for (String tbl : tableName) {
+            table(databaseName, tbl);
+            if (SchemaCatalog.tableExist(databaseName, tbl) == Boolean.FALSE) continue;
+            if (executeDdl("deleteTable", databaseName, tbl, String.format(sql, databaseName, tbl))) {
+                table(databaseName, tbl).columnNames = null;
+                SchemaCatalog.tableDropped(databaseName, tbl);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            writtenAll(databaseName, tbl);
         }
     }
 
     public static String getTableType(String databaseName, String tableName) {
+        String known = SchemaCatalog.getTableType(databaseName, tableName);
+        if (known != null) return known;
         String sql = "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND COLUMN_NAME = 'key'";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, databaseName);
-            ps.setString(2, tableName);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next() ? "key" : "nokey";
+        return execute("getTableType", databaseName, tableName, null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, databaseName);
+                ps.setString(2, tableName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? "key" : "nokey";
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        });
     }
 
     public static String getString(String databaseName, String tableName, String key) {
-        String sql = "SELECT `value` FROM `" + databaseName + "`.`" + tableName + "` WHERE `key` = ?";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, key);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("value");
+        WriteBehindQueue.Pending pending = WriteBehindQueue.lookup(databaseName, tableName, "value", key);
+        if (pending == null) pending = WriteJournal.lookup(databaseName, tableName, "value", key);
+        if (pending != null) return pending.getValue();
+        DatabaseCache.TableCache cache = DatabaseCache.get(databaseName, tableName);
+        if (cache != null) {
+            DatabaseCache.Hit hit = cache.get(key, "value");
+            if (hit != null) return hit.getValue();
+        }
+        long generation = cache != null ? cache.generation(key) : 0;
+        String sql = table(databaseName, tableName).valueColumn.select;
+        return executeRead("getString", databaseName, tableName, key, null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        String value = rs.getString("value");
+                        if (cache != null) cache.putValue(generation, key, "value", value);
+                        return value;
+                    }
+                    if (cache != null) cache.putExists(generation, key, false);
+                    return null;
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        });
     }
 
     public static List<String> getStringList(String databaseName, String tableName, String key) {
-        String sql = "SELECT `value` FROM `" + databaseName + "`.`" + tableName + "` WHERE `key` = ?";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, key);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return new ArrayList<>(Arrays.asList(rs.getString("value").split(",\\s*")));
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        String value = getString(databaseName, tableName, key);
+        if (value == null) return null;
+        return new ArrayList<>(Arrays.asList(value.split(",\\s*")));
     }
 
     public static Object getData(Object example, String databaseName, String tableName, String key) {
         String json = getString(databaseName, tableName, key);
         if (json == null) return null;
-        Type type;
-        if (example instanceof Collection || example instanceof Map) {
-            type = TypeToken.get(example.getClass()).getType();
-        } else {
-            type = example.getClass();
-        }
-        return gson.fromJson(json, type);
+        return Codecs.forExample(example).decode(json);
+    }
+
+    public static <T> T getData(Class<T> type, String databaseName, String tableName, String key) {
+        return getData(Codecs.get(type), databaseName, tableName, key);
+    }
+
+    public static <T> T getData(TypeToken<T> type, String databaseName, String tableName, String key) {
+        return getData(Codecs.get(type), databaseName, tableName, key);
+    }
+
+    public static <T> T getData(Codec<T> codec, String databaseName, String tableName, String key) {
+        String data = getString(databaseName, tableName, key);
+        if (data == null) return null;
+        return codec.decode(data);
     }
 
     public static String getStringFromColumn(String databaseName, String tableName, String key, String columnName) {
-        String sql = "SELECT `" + columnName + "` FROM `" + databaseName + "`.`" + tableName + "` WHERE `key` = ?";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, key);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString(columnName);
+        WriteBehindQueue.Pending pending = WriteBehindQueue.lookup(databaseName, tableName, columnName, key);
+        if (pending == null) pending = WriteJournal.lookup(databaseName, tableName, columnName, key);
+        if (pending != null) return pending.getValue();
+        DatabaseCache.TableCache cache = DatabaseCache.get(databaseName, tableName);
+        if (cache != null) {
+            DatabaseCache.Hit hit = cache.get(key, columnName);
+            if (hit != null) return hit.getValue();
+        }
+        long generation = cache != null ? cache.generation(key) : 0;
+        String sql = table(databaseName, tableName).column(columnName).select;
+        return executeRead("getStringFromColumn", databaseName, tableName, key, null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        String value = rs.getString(columnName);
+                        if (cache != null) cache.putValue(generation, key, columnName, value);
+                        return value;
+                    }
+                    if (cache != null) cache.putExists(generation, key, false);
+                    return null;
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        });
     }
 
     public static List<String> getStringListFromColumn(String databaseName, String tableName, String key, String columnName) {
-        String sql = "SELECT `" + columnName + "` FROM `" + databaseName + "`.`" + tableName + "` WHERE `key` = ?";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, key);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return new ArrayList<>(Arrays.asList(rs.getString(columnName).split(",\\s*")));
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        String value = getStringFromColumn(databaseName, tableName, key, columnName);
+        if (value == null) return null;
+        return new ArrayList<>(Arrays.asList(value.split(",\\s*")));
     }
 
     public static Object getObjectFromColumn(Object example, String databaseName, String tableName, String key, String columnName) {
         String json = getStringFromColumn(databaseName, tableName, key, columnName);
         if (json == null) return null;
-        Type type;
-        if (example instanceof Collection || example instanceof Map) {
-            type = TypeToken.get(example.getClass()).getType();
-        } else {
-            type = example.getClass();
+        return Codecs.forExample(example).decode(json);
+    }
+
+    public static <T> T getObjectFromColumn(Class<T> type, String databaseName, String tableName, String key, String columnName) {
+        return getObjectFromColumn(Codecs.get(type), databaseName, tableName, key, columnName);
+    }
+
+    public static <T> T getObjectFromColumn(TypeToken<T> type, String databaseName, String tableName, String key, String columnName) {
+        return getObjectFromColumn(Codecs.get(type), databaseName, tableName, key, columnName);
+    }
+
+    public static <T> T getObjectFromColumn(Codec<T> codec, String databaseName, String tableName, String key, String columnName) {
+        String data = getStringFromColumn(databaseName, tableName, key, columnName);
+        if (data == null) return null;
+        return codec.decode(data);
+    }
+
+    public static Map<String, String> getStrings(String databaseName, String tableName, Collection<String> keys) {
+        return getStringsFromColumn(databaseName, tableName, keys, "value");
+    }
+
+    public static Map<String, Object> getDataMany(Object example, String databaseName, String tableName, Collection<String> keys) {
+        return decodeAll(Codecs.forExample(example), getStrings(databaseName, tableName, keys));
+    }
+
+    public static <T> Map<String, T> getDataMany(Class<T> type, String databaseName, String tableName, Collection<String> keys) {
+        return decodeAll(Codecs.get(type), getStrings(databaseName, tableName, keys));
+    }
+
+    public static <T> Map<String, T> getDataMany(TypeToken<T> type, String databaseName, String tableName, Collection<String> keys) {
+        return decodeAll(Codecs.get(type), getStrings(databaseName, tableName, keys));
+    }
+
+    public static <T> Map<String, T> getDataMany(Codec<T> codec, String databaseName, String tableName, Collection<String> keys) {
+        return decodeAll(codec, getStrings(databaseName, tableName, keys));
+    }
+
+    public static Map<String, Object> getObjectsFromColumn(Object example, String databaseName, String tableName, Collection<String> keys, String columnName) {
+        return decodeAll(Codecs.forExample(example), getStringsFromColumn(databaseName, tableName, keys, columnName));
+    }
+
+    public static <T> Map<String, T> getObjectsFromColumn(Class<T> type, String databaseName, String tableName, Collection<String> keys, String columnName) {
+        return decodeAll(Codecs.get(type), getStringsFromColumn(databaseName, tableName, keys, columnName));
+    }
+
+    public static <T> Map<String, T> getObjectsFromColumn(TypeToken<T> type, String databaseName, String tableName, Collection<String> keys, String columnName) {
+        return decodeAll(Codecs.get(type), getStringsFromColumn(databaseName, tableName, keys, columnName));
+    }
+
+    public static Map<String, String> getStringsFromColumn(String databaseName, String tableName, Collection<String> keys, String columnName) {
+        TableHandle.Column column = table(databaseName, tableName).column(columnName);
+        Map<String, String> values = new LinkedHashMap<>();
+        DatabaseCache.TableCache cache = DatabaseCache.get(databaseName, tableName);
+        Map<String, Long> generations = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            WriteBehindQueue.Pending pending = WriteBehindQueue.lookup(databaseName, tableName, columnName, key);
+            if (pending == null) pending = WriteJournal.lookup(databaseName, tableName, columnName, key);
+            if (pending != null) {
+                values.put(key, pending.getValue());
+                continue;
+            }
+            if (cache != null) {
+                DatabaseCache.Hit hit = cache.get(key, columnName);
+                if (hit != null) {
+                    if (hit != DatabaseCache.Hit.ABSENT) values.put(key, hit.getValue());
+                    continue;
+                }
+            }
+            if (cache != null) generations.put(key, cache.generation(key));
+            missing.add(key);
+        }
+        if (missing.isEmpty()) return values;
+
+        Set<String> found = new HashSet<>();
+        boolean completed = execute("getStrings", databaseName, tableName, false, () -> ReplicaRouter.getReadConnection(databaseName, tableName, missing), conn -> {
+            for (int from = 0; from < missing.size(); from += IN_LIST_SIZES[IN_LIST_SIZES.length - 1]) {
+                List<String> chunk = missing.subList(from, Math.min(missing.size(), from + IN_LIST_SIZES[IN_LIST_SIZES.length - 1]));
+                int size = inListSize(chunk.size());
+                try (PreparedStatement ps = conn.prepareStatement(column.selectIn(size))) {
+                    for (int i = 0; i < size; i++) {
+                        ps.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String key = rs.getString("key");
+                            String value = rs.getString(columnName);
+                            values.put(key, value);
+                            found.add(key);
+                            Long generation = generations.get(key);
+                            if (generation != null) cache.putValue(generation, key, columnName, value);
+                        }
+                    }
+                }
+            }
+            return true;
+        });
+        if (completed && cache != null) {
+            for (String key : missing) {
+                if (!found.contains(key)) cache.putExists(generations.get(key), key, false);
+            }
         }
-        return gson.fromJson(json, type);
+        return values;
     }
 
-    public static void saveString(String databaseName, String tableName, String key, String value) {
-        String sql = "INSERT INTO `" + databaseName + "`.`" + tableName + "` (`key`,`value`) VALUES (?,?) " +
-                "ON DUPLICATE KEY UPDATE `value` = VALUES(`value`)";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, key);
-            ps.setString(2, value);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+    private static int inListSize(int count) {
+        for (int size : IN_LIST_SIZES) {
+            if (size >= count) return size;
         }
+        return IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+    }
+
+    private static <T> Map<String, T> decodeAll(Codec<T> codec, Map<String, String> data) {
+        Map<String, T> values = new LinkedHashMap<>();
+        data.forEach((key, value) -> values.put(key, value == null ? null : codec.decode(value)));
+        return values;
+    }
+
+    public static void saveString(String databaseName, String tableName, String key, String value) {
+        upsert("saveString", databaseName, tableName, "value", key, value);
     }
 
     public static void saveStringList(String databaseName, String tableName, String key, List<String> value) {
-        String sql = "INSERT INTO `" + databaseName + "`.`" + tableName + "` (`key`,`value`) VALUES (?,?) " +
-                "ON DUPLICATE KEY UPDATE `value` = VALUES(`value`)";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, key);
-            ps.setString(2, String.join(", ", value));
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        upsert("saveStringList", databaseName, tableName, "value", key, String.join(", ", value));
     }
 
     public static void saveString(String databaseName, String tableName, String value) {
-        String sql = "INSERT INTO `" + databaseName + "`.`" + tableName + "` (`value`) VALUES (?)";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, value);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        String sql = table(databaseName, tableName).insertValue;
+        DatabaseException error = write("saveString", databaseName, tableName, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, value);
+                return ps.executeUpdate();
+            }
+        });
+        if (error != null && error.isTransient() && WriteJournal.appendInsert(databaseName, tableName, value)) return;
+        ReplicaRouter.recordWrite(databaseName, tableName, null);
     }
 
     public static void saveData(String databaseName, String tableName, String key, Object value) {
-        saveString(databaseName, tableName, key, gson.toJson(value));
+        saveString(databaseName, tableName, key, Codecs.encode(value));
+    }
+
+    public static <T> void saveData(String databaseName, String tableName, String key, T value, Codec<T> codec) {
+        saveString(databaseName, tableName, key, codec.encode(value));
     }
 
     public static void saveData(String databaseName, String tableName, Object value) {
-        saveString(databaseName, tableName, gson.toJson(value));
+        saveString(databaseName, tableName, Codecs.encode(value));
     }
 
     public static void saveStringInColumn(String databaseName, String tableName, String key, String columnName, String value) {
-        String sql = "INSERT INTO `" + databaseName + "`.`" + tableName + "` (`key`, `" + columnName + "`) VALUES (?, ?) " +
-                "ON DUPLICATE KEY UPDATE `" + columnName + "` = VALUES(`" + columnName + "`)";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, key);
-            ps.setString(2, value);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        upsert("saveStringInColumn", databaseName, tableName, columnName, key, value);
     }
 
     public static void saveStringListInColumn(String databaseName, String tableName, String key, String columnName, List<String> value) {
-        String sql = "INSERT INTO `" + databaseName + "`.`" + tableName + "` (`key`, `" + columnName + "`) VALUES (?, ?) " +
-                "ON DUPLICATE KEY UPDATE `" + columnName + "` = VALUES(`" + columnName + "`)";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, key);
-            ps.setString(2, String.join(", ", value));
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+        upsert("saveStringListInColumn", databaseName, tableName, columnName, key, String.join(", ", value));
+    }
+
+    /**
+     * Upsert di una colonna per chiave: dal journal se la chiave ha già scritture in sospeso, poi dalla
+     * coda write-behind, altrimenti direttamente sul database. Se il database non è raggiungibile la
+     * scrittura finisce nel {@link WriteJournal} invece di andare persa.
+     */
+    private static void upsert(String operation, String databaseName, String tableName, String columnName, String key, String value) {
+        if (WriteJournal.appendUpsertIfPending(databaseName, tableName, columnName, key, value)
+                || WriteBehindQueue.enqueue(databaseName, tableName, columnName, key, value)) {
+            DatabaseCache.invalidate(databaseName, tableName, key);
+            return;
+        }
+        String sql = table(databaseName, tableName).column(columnName).upsert;
+        DatabaseException error = write(operation, databaseName, tableName, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, key);
+                ps.setString(2, value);
+                return ps.executeUpdate();
+            }
+        });
+        if (error != null && error.isTransient() && WriteJournal.appendUpsert(databaseName, tableName, columnName, key, value)) {
+            DatabaseCache.invalidate(databaseName, tableName, key);
+            return;
         }
+        written(databaseName, tableName, key);
     }
 
     public static void saveObjectInColumn(String databaseName, String tableName, String key, String columnName, Object value) {
-        saveStringInColumn(databaseName, tableName, key, columnName, gson.toJson(value));
+        saveStringInColumn(databaseName, tableName, key, columnName, Codecs.encode(value));
     }
 
-    public static void deleteValue(String databaseName, String tableName, String key) {
-        String sql = "DELETE FROM `" + databaseName + "`.`" + tableName + "` WHERE `key` = ?";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+    /**
+     * Somma {@code delta} alla colonna con un solo statement sul database, creando la riga (con valore
+     * {@code delta}) se non esiste. Restituisce il nuovo valore, o {@code null} in caso di errore.
+     * A differenza di get + save, incrementi concorrenti da più server non si sovrascrivono.
+     */
+    public static Long increment(String databaseName, String tableName, String key, String columnName, long delta) {
+        TableHandle.Column column = table(databaseName, tableName).column(columnName);
+        return atomicUpdate("increment", databaseName, tableName, key, null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(column.increment)) {
+                ps.setString(1, key);
+                ps.setLong(2, delta);
+                ps.setLong(3, delta);
+                ps.executeUpdate();
+            }
+            return selectNumber(conn, column.select, key, Long::valueOf);
+        });
+    }
+
+    public static Double increment(String databaseName, String tableName, String key, String columnName, double delta) {
+        TableHandle.Column column = table(databaseName, tableName).column(columnName);
+        return atomicUpdate("increment", databaseName, tableName, key, null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(column.incrementDecimal)) {
+                ps.setString(1, key);
+                ps.setDouble(2, delta);
+                ps.setDouble(3, delta);
+                ps.executeUpdate();
+            }
+            return selectNumber(conn, column.select, key, Double::valueOf);
+        });
+    }
+
+    /**
+     * Scrive {@code value} solo se la colonna contiene ancora {@code expected}; con {@code expected == null}
+     * la riga deve essere assente o la colonna {@code NULL}. Restituisce {@code true} se il valore è stato scritto.
+     */
+    public static boolean compareAndSet(String databaseName, String tableName, String key, String columnName, String expected, String value) {
+        TableHandle.Column column = table(databaseName, tableName).column(columnName);
+        return atomicUpdate("compareAndSet", databaseName, tableName, key, false, conn -> {
+            if (expected != null) {
+                try (PreparedStatement ps = conn.prepareStatement(column.compareAndSet)) {
+                    ps.setString(1, value);
+                    ps.setString(2, key);
+                    ps.setString(3, expected);
+                    return ps.executeUpdate() > 0;
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(column.setIfNull)) {
+                ps.setString(1, value);
+                ps.setString(2, key);
+                if (ps.executeUpdate() > 0) return true;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(column.insertIfAbsent)) {
+                ps.setString(1, key);
+                ps.setString(2, value);
+                return ps.executeUpdate() > 0;
+            }
+        });
+    }
+
+    /**
+     * Optimistic locking su una colonna di versione: scrive {@code value} e incrementa {@code versionColumn}
+     * solo se la versione attuale è {@code expectedVersion} (0 per una riga non ancora esistente, che viene
+     * creata con versione 1). Restituisce {@code true} se il valore è stato scritto.
+     */
+    public static boolean compareAndSetVersion(String databaseName, String tableName, String key, String columnName, String versionColumn, long expectedVersion, String value) {
+        TableHandle handle = table(databaseName, tableName);
+        String[] sql = handle.column(columnName).versioned(handle.column(versionColumn));
+        return atomicUpdate("compareAndSet", databaseName, tableName, key, false, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql[0])) {
+                ps.setString(1, value);
+                ps.setString(2, key);
+                ps.setLong(3, expectedVersion);
+                if (ps.executeUpdate() > 0) return true;
+            }
+            if (expectedVersion != 0) return false;
+            try (PreparedStatement ps = conn.prepareStatement(sql[1])) {
+                ps.setString(1, key);
+                ps.setString(2, value);
+                return ps.executeUpdate() > 0;
+            }
+        });
+    }
+
+    /**
+     * Modifica un solo campo del JSON salvato con {@code saveData} usando {@code JSON_SET}, senza rileggere e
+     * riscrivere l'intero documento. {@code path} è un percorso JSON di MySQL (es. {@code $.stats.kills}),
+     * {@code value} viene serializzato con Gson. Restituisce {@code false} se la riga non esiste.
+     * Non si applica alle tabelle binarie, dove il valore è compresso.
+     */
+    public static boolean updateJson(String databaseName, String tableName, String key, String path, Object value) {
+        return updateJson(databaseName, tableName, key, Collections.singletonMap(path, value));
+    }
+
+    public static boolean updateJson(String databaseName, String tableName, String key, Map<String, ?> values) {
+        if (values.isEmpty()) return false;
+        String sql = table(databaseName, tableName).valueColumn.jsonSet(values.size());
+        return atomicUpdate("updateJson", databaseName, tableName, key, false, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int index = 1;
+                for (Map.Entry<String, ?> entry : values.entrySet()) {
+                    ps.setString(index++, entry.getKey());
+                    ps.setString(index++, Codecs.encode(entry.getValue()));
+                }
+                ps.setString(index, key);
+                return ps.executeUpdate() > 0;
+            }
+        });
+    }
+
+    public static boolean removeJson(String databaseName, String tableName, String key, String path) {
+        String sql = table(databaseName, tableName).valueColumn.jsonRemove;
+        return atomicUpdate("removeJson", databaseName, tableName, key, false, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, path);
+                ps.setString(2, key);
+                return ps.executeUpdate() > 0;
+            }
+        });
+    }
+
+    /**
+     * Somma {@code delta} al numero in {@code path} (0 se il campo manca) e restituisce il nuovo valore,
+     * oppure {@code null} se la riga non esiste o in caso di errore.
+     */
+    public static Long incrementJson(String databaseName, String tableName, String key, String path, long delta) {
+        TableHandle.Column column = table(databaseName, tableName).valueColumn;
+        return atomicUpdate("incrementJson", databaseName, tableName, key, null, conn ->
+                updateJsonNumber(conn, column.jsonIncrement, key, path, delta) ? selectJsonNumber(conn, column, key, path, Long::valueOf) : null);
+    }
+
+    public static Double incrementJson(String databaseName, String tableName, String key, String path, double delta) {
+        TableHandle.Column column = table(databaseName, tableName).valueColumn;
+        return atomicUpdate("incrementJson", databaseName, tableName, key, null, conn ->
+                updateJsonNumber(conn, column.jsonIncrementDecimal, key, path, delta) ? selectJsonNumber(conn, column, key, path, Double::valueOf) : null);
+    }
+
+    /**
+     * Legge un solo campo del JSON con {@code JSON_EXTRACT}, trasferendo e decodificando solo quel campo.
+     */
+    public static <T> T getJson(Class<T> type, String databaseName, String tableName, String key, String path) {
+        return getJson(Codecs.get(type), databaseName, tableName, key, path);
+    }
+
+    public static <T> T getJson(TypeToken<T> type, String databaseName, String tableName, String key, String path) {
+        return getJson(Codecs.get(type), databaseName, tableName, key, path);
+    }
+
+    public static <T> T getJson(Codec<T> codec, String databaseName, String tableName, String key, String path) {
+        if (WriteBehindQueue.lookup(databaseName, tableName, "value", key) != null) WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("getJson", databaseName, tableName, key)) return null;
+        String sql = table(databaseName, tableName).valueColumn.jsonExtract;
+        String json = executeRead("getJson", databaseName, tableName, key, null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, path);
+                ps.setString(2, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getString(1) : null;
+                }
+            }
+        });
+        return json == null ? null : codec.decode(json);
+    }
+
+    /**
+     * Esegue {@code call} in una piccola transazione sulla riga {@code key}, dopo aver scritto le modifiche
+     * in coda write-behind della tabella, e la invalida in cache anche in caso di errore.
+     */
+    private static <T> T atomicUpdate(String operation, String databaseName, String tableName, String key, T fallback, SqlCall<T> call) {
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed(operation, databaseName, tableName, key)) return fallback;
+        try {
+            return execute(operation, databaseName, tableName, fallback, conn -> {
+                conn.setAutoCommit(false);
+                try {
+                    T result = call.call(conn);
+                    conn.commit();
+                    return result;
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            });
+        } finally {
+            written(databaseName, tableName, key);
+        }
+    }
+
+    private static boolean updateJsonNumber(Connection conn, String sql, String key, String path, Number delta) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, path);
+            ps.setString(2, path);
+            ps.setObject(3, delta);
+            ps.setString(4, key);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    private static <N> N selectJsonNumber(Connection conn, TableHandle.Column column, String key, String path, Function<String, N> parser) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(column.jsonExtract)) {
+            ps.setString(1, path);
+            ps.setString(2, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                String value = rs.next() ? rs.getString(1) : null;
+                return value == null ? null : parser.apply(value);
+            }
+        }
+    }
+
+    private static <N> N selectNumber(Connection conn, String sql, String key, Function<String, N> parser) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, key);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            try (ResultSet rs = ps.executeQuery()) {
+                String value = rs.next() ? rs.getString(1) : null;
+                return value == null ? null : parser.apply(value);
+            }
+        }
+    }
+
+    public static byte[] getBytes(String databaseName, String tableName, String key) {
+        return getBytesFromColumn(databaseName, tableName, key, "value");
+    }
+
+    public static byte[] getBytesFromColumn(String databaseName, String tableName, String key, String columnName) {
+        return BinaryFormat.unpack(selectBytes(databaseName, tableName, key, columnName));
+    }
+
+    // Valore così come è salvato, con l'intestazione di BinaryFormat
+    private static byte[] selectBytes(String databaseName, String tableName, String key, String columnName) {
+        String sql = table(databaseName, tableName).column(columnName).select;
+        return executeRead("getBytes", databaseName, tableName, key, null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getBytes(columnName) : null;
+                }
+            }
+        });
+    }
+
+    public static void saveBytes(String databaseName, String tableName, String key, byte[] value) {
+        saveBytesInColumn(databaseName, tableName, key, "value", value);
+    }
+
+    public static void saveBytesInColumn(String databaseName, String tableName, String key, String columnName, byte[] value) {
+        String sql = table(databaseName, tableName).column(columnName).upsert;
+        WriteBehindQueue.discard(databaseName, tableName, key);
+        if (!journalReplayed("saveBytesInColumn", databaseName, tableName, key)) return;
+        try {
+            execute("saveBytesInColumn", databaseName, tableName, 0, conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setString(1, key);
+                    ps.setBytes(2, value == null ? null : BinaryFormat.pack(value));
+                    return ps.executeUpdate();
+                }
+            });
+        } finally {
+            written(databaseName, tableName, key);
+        }
+    }
+
+    public static <T> T getBinaryData(Class<T> type, String databaseName, String tableName, String key) {
+        return getBinaryData(Codecs.get(type), databaseName, tableName, key);
+    }
+
+    public static <T> T getBinaryData(TypeToken<T> type, String databaseName, String tableName, String key) {
+        return getBinaryData(Codecs.get(type), databaseName, tableName, key);
+    }
+
+    public static <T> T getBinaryData(Codec<T> codec, String databaseName, String tableName, String key) {
+        return getBinaryObjectFromColumn(codec, databaseName, tableName, key, "value");
+    }
+
+    public static <T> T getBinaryObjectFromColumn(Codec<T> codec, String databaseName, String tableName, String key, String columnName) {
+        byte[] data = selectBytes(databaseName, tableName, key, columnName);
+        if (data == null) return null;
+        return BinaryFormat.decode(codec, data);
+    }
+
+    public static void saveBinaryData(String databaseName, String tableName, String key, Object value) {
+        saveBytes(databaseName, tableName, key, Codecs.forExample(value).encodeBytes(value));
+    }
+
+    public static <T> void saveBinaryData(String databaseName, String tableName, String key, T value, Codec<T> codec) {
+        saveBytes(databaseName, tableName, key, codec.encodeBytes(value));
+    }
+
+    public static <T> void saveBinaryObjectInColumn(String databaseName, String tableName, String key, String columnName, T value, Codec<T> codec) {
+        saveBytesInColumn(databaseName, tableName, key, columnName, codec.encodeBytes(value));
+    }
+
+    public static List<String> getBinaryStringList(String databaseName, String tableName, String key) {
+        return getBinaryData(Codecs.stringList(), databaseName, tableName, key);
+    }
+
+    public static void saveBinaryStringList(String databaseName, String tableName, String key, List<String> value) {
+        saveBinaryData(databaseName, tableName, key, value, Codecs.stringList());
+    }
+
+    public static void deleteValue(String databaseName, String tableName, String key) {
+        WriteBehindQueue.discard(databaseName, tableName, key);
+        if (WriteJournal.appendDeleteIfPending(databaseName, tableName, key)) {
+            DatabaseCache.invalidate(databaseName, tableName, key);
+            return;
+        }
+        String sql = table(databaseName, tableName).deleteByKey;
+        DatabaseException error = write("deleteValue", databaseName, tableName, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, key);
+                return ps.executeUpdate();
+            }
+        });
+        if (error != null && error.isTransient() && WriteJournal.appendDelete(databaseName, tableName, key)) {
+            DatabaseCache.invalidate(databaseName, tableName, key);
+            return;
         }
+        written(databaseName, tableName, key);
     }
 
     public static void removeString(String databaseName, String tableName, String value) {
-        String sql = "DELETE FROM `" + databaseName + "`.`" + tableName + "` WHERE `value` = ?";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, value);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("removeString", databaseName, tableName)) return;
+        TableHandle handle = table(databaseName, tableName);
+        boolean hashed = isValueHashed(handle);
+        String sql = hashed ? handle.deleteByValueHash : handle.deleteByValue;
+        try {
+            execute("removeString", databaseName, tableName, 0, conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setString(1, value);
+                    if (hashed) ps.setString(2, value);
+                    return ps.executeUpdate();
+                }
+            });
+        } finally {
+            writtenAll(databaseName, tableName);
         }
     }
 
     public static void removeValue(String databaseName, String tableName, Object value) {
-        removeString(databaseName, tableName, gson.toJson(value));
+        removeString(databaseName, tableName, Codecs.encode(value));
     }
 
     public static List<String> getTableKeys(String databaseName, String tableName) {
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("getTableKeys", databaseName, tableName)) return new ArrayList<>();
         List<String> keys = new ArrayList<>();
-        String sql = "SELECT `key` FROM `" + databaseName + "`.`" + tableName + "`";
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                keys.add(rs.getString("key"));
+        String sql = table(databaseName, tableName).selectKeys;
+        executeRead("getTableKeys", databaseName, tableName, null, 0, conn -> {
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    keys.add(rs.getString("key"));
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            return keys.size();
+        });
         return keys;
     }
 
     public static List<String> getTableStrings(String databaseName, String tableName) {
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("getTableStrings", databaseName, tableName)) return new ArrayList<>();
         List<String> values = new ArrayList<>();
-        String sql = "SELECT `value` FROM `" + databaseName + "`.`" + tableName + "`";
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                values.add(rs.getString("value"));
+        String sql = table(databaseName, tableName).selectValues;
+        executeRead("getTableStrings", databaseName, tableName, null, 0, conn -> {
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    values.add(rs.getString("value"));
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            return values.size();
+        });
+        return values;
+    }
+
+    /**
+     * Valori inseriti negli ultimi {@code window} in una tabella partizionata, in ordine di inserimento.
+     * Il filtro su {@code created} fa leggere a MySQL solo le partizioni interessate, quindi il costo non
+     * cresce con lo storico.
+     */
+    public static List<String> getRecentStrings(String databaseName, String tableName, Duration window) {
+        if (!journalReplayed("getRecentStrings", databaseName, tableName)) return new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        String sql = table(databaseName, tableName).selectRecentValues;
+        executeRead("getRecentStrings", databaseName, tableName, null, 0, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setLong(1, Math.max(0, window.getSeconds()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        values.add(rs.getString("value"));
+                    }
+                }
+            }
+            return values.size();
+        });
         return values;
     }
 
     public static List<Object> getTableObject(String databaseName, String tableName) {
-        List<Object> list = new ArrayList<>();
-        String sql = "SELECT `value` FROM `" + databaseName + "`.`" + tableName + "`";
-        try (Connection conn = getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                list.add(gson.fromJson(rs.getString("value"), Object.class));
+        return getTableObject(Codecs.get(Object.class), databaseName, tableName);
+    }
+
+    public static <T> List<T> getTableObject(Class<T> type, String databaseName, String tableName) {
+        return getTableObject(Codecs.get(type), databaseName, tableName);
+    }
+
+    public static <T> List<T> getTableObject(TypeToken<T> type, String databaseName, String tableName) {
+        return getTableObject(Codecs.get(type), databaseName, tableName);
+    }
+
+    public static <T> List<T> getTableObject(Codec<T> codec, String databaseName, String tableName) {
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("getTableObject", databaseName, tableName)) return new ArrayList<>();
+        List<T> list = new ArrayList<>();
+        String sql = table(databaseName, tableName).selectValues;
+        executeRead("getTableObject", databaseName, tableName, null, 0, conn -> {
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    String value = rs.getString("value");
+                    list.add(value == null ? null : codec.decode(value));
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            return list.size();
+        });
         return list;
     }
 
-    public static List<String> getTables(String databaseName) {
-        List<String> tables = new ArrayList<>();
-        String sql = "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = ?";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, databaseName);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    tables.add(rs.getString("TABLE_NAME"));
+    public static Stream<String> streamTableKeys(String databaseName, String tableName) {
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("streamTableKeys", databaseName, tableName)) return Stream.empty();
+        return streamQuery("streamTableKeys", databaseName, tableName, table(databaseName, tableName).selectKeys, rs -> rs.getString("key"));
+    }
+
+    public static Stream<String> streamTableStrings(String databaseName, String tableName) {
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("streamTableStrings", databaseName, tableName)) return Stream.empty();
+        return streamQuery("streamTableStrings", databaseName, tableName, table(databaseName, tableName).selectValues, rs -> rs.getString("value"));
+    }
+
+    public static Stream<Object> streamTableObject(String databaseName, String tableName) {
+        return streamTableObject(Codecs.get(Object.class), databaseName, tableName);
+    }
+
+    public static <T> Stream<T> streamTableObject(Class<T> type, String databaseName, String tableName) {
+        return streamTableObject(Codecs.get(type), databaseName, tableName);
+    }
+
+    public static <T> Stream<T> streamTableObject(TypeToken<T> type, String databaseName, String tableName) {
+        return streamTableObject(Codecs.get(type), databaseName, tableName);
+    }
+
+    public static <T> Stream<T> streamTableObject(Codec<T> codec, String databaseName, String tableName) {
+        return streamTableStrings(databaseName, tableName).map(value -> value == null ? null : codec.decode(value));
+    }
+
+    public static void forEachTableKey(String databaseName, String tableName, Consumer<String> action) {
+        try (Stream<String> keys = streamTableKeys(databaseName, tableName)) {
+            keys.forEach(action);
+        }
+    }
+
+    public static void forEachTableString(String databaseName, String tableName, Consumer<String> action) {
+        try (Stream<String> values = streamTableStrings(databaseName, tableName)) {
+            values.forEach(action);
+        }
+    }
+
+    public static List<String> getTableKeysAfter(String databaseName, String tableName, String afterKey, int limit) {
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("getTableKeysAfter", databaseName, tableName)) return new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        TableHandle handle = table(databaseName, tableName);
+        String sql = afterKey == null ? handle.selectKeysFirstPage : handle.selectKeysAfter;
+        executeRead("getTableKeysAfter", databaseName, tableName, null, 0, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int index = 1;
+                if (afterKey != null) ps.setString(index++, afterKey);
+                ps.setInt(index, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        keys.add(rs.getString("key"));
+                    }
+                }
+            }
+            return keys.size();
+        });
+        return keys;
+    }
+
+    public static LinkedHashMap<Long, String> getTableStringsAfter(String databaseName, String tableName, long afterId, int limit) {
+        if (!journalReplayed("getTableStringsAfter", databaseName, tableName)) return new LinkedHashMap<>();
+        LinkedHashMap<Long, String> values = new LinkedHashMap<>();
+        String sql = table(databaseName, tableName).selectStringsAfter;
+        executeRead("getTableStringsAfter", databaseName, tableName, null, 0, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setLong(1, afterId);
+                ps.setInt(2, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        values.put(rs.getLong("id"), rs.getString("value"));
+                    }
                 }
             }
+            return values.size();
+        });
+        return values;
+    }
+
+    public static void forEachTableKeyPaged(String databaseName, String tableName, int pageSize, Consumer<String> action) {
+        String last = null;
+        List<String> page;
+        do {
+            page = getTableKeysAfter(databaseName, tableName, last, pageSize);
+            page.forEach(action);
+            if (!page.isEmpty()) last = page.get(page.size() - 1);
+        } while (page.size() == pageSize);
+    }
+
+    public static void forEachTableStringPaged(String databaseName, String tableName, int pageSize, Consumer<String> action) {
+        long last = 0;
+        LinkedHashMap<Long, String> page;
+        do {
+            page = getTableStringsAfter(databaseName, tableName, last, pageSize);
+            for (Map.Entry<Long, String> entry : page.entrySet()) {
+                action.accept(entry.getValue());
+                last = entry.getKey();
+            }
+        } while (page.size() == pageSize);
+    }
+
+    /**
+     * Esegue la query con un cursore forward-only: le righe vengono lette dal server a blocchi di
+     * {@code streaming.fetch-size} man mano che lo stream viene consumato. Lo stream tiene occupata
+     * una connessione del pool finché non viene chiuso, quindi va sempre usato in un try-with-resources.
+     */
+    private static <T> Stream<T> streamQuery(String operation, String databaseName, String tableName, String sql, RowMapper<T> mapper) {
+        return streamQuery(operation, databaseName, tableName, sql, ps -> { }, mapper);
+    }
+
+    static <T> Stream<T> streamQuery(String operation, String databaseName, String tableName, String sql, StatementBinder binder, RowMapper<T> mapper) {
+        long start = System.nanoTime();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = ReplicaRouter.getReadConnection(databaseName, tableName, (String) null);
+            ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            int fetchSize = Config.getData(Integer.class, "streaming.fetch-size", 1000);
+            ps.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+            binder.bind(ps);
+            rs = ps.executeQuery();
         } catch (SQLException e) {
-            e.printStackTrace();
+            fail(operation, databaseName, tableName, e);
+            closeQuietly(rs, ps, conn);
+            DatabaseMetrics.record(operation, databaseName, tableName, System.nanoTime() - start, 0, true);
+            return Stream.empty();
         }
-        return tables;
+        ResultSet results = rs;
+        AutoCloseable[] resources = {rs, ps, conn};
+        long[] rows = {0};
+        boolean[] failed = {false};
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!results.next()) return false;
+                    rows[0]++;
+                    action.accept(mapper.map(results));
+                    return true;
+                } catch (SQLException e) {
+                    failed[0] = true;
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            closeQuietly(resources);
+            DatabaseMetrics.record(operation, databaseName, tableName, System.nanoTime() - start, rows[0], failed[0]);
+        });
     }
 
-    public static boolean hasKey(String databaseName, String tableName, String key) {
-        String query = "SELECT 1 FROM `" + databaseName + "`.`" + tableName + "` WHERE `key` = ? LIMIT 1";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(query)) {
-            ps.setString(1, key);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+    private static void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource == null) continue;
+            try {
+                resource.close();
+            } catch (Exception e) {
+                DatabaseMetrics.logger().warning("Impossibile chiudere " + resource + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Esegue {@code task} in una transazione su una sola connessione e fa un unico commit alla fine.
+     * In caso di deadlock o lock wait timeout la transazione viene annullata e {@code task} rieseguito da capo
+     * (fino a {@code transactions.max-retries} volte), quindi non deve avere effetti fuori dalla sessione.
+     * Restituisce {@code true} se il commit è andato a buon fine.
+     */
+    public static boolean transaction(Session.Task task) {
+        return transaction(defaultIsolation(), task);
+    }
+
+    public static boolean transaction(int isolation, Session.Task task) {
+        return transactionResult(isolation, session -> {
+            task.run(session);
+            return Boolean.TRUE;
+        }) != null;
+    }
+
+    public static <T> T transactionResult(Session.Function<T> work) {
+        return transactionResult(defaultIsolation(), work);
+    }
+
+    /**
+     * Come {@link #transaction(int, Session.Task)} ma restituisce il valore calcolato da {@code work},
+     * oppure {@code null} se la transazione non è andata a buon fine. {@code isolation} è una delle
+     * costanti {@code Connection.TRANSACTION_*}.
+     */
+    public static <T> T transactionResult(int isolation, Session.Function<T> work) {
+        int retries = Math.max(0, Config.getData(Integer.class, "transactions.max-retries", 3));
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            boolean failed = false;
+            try (Connection conn = getConnection()) {
+                return runTransaction(conn, isolation, work);
+            } catch (SQLException e) {
+                if (attempt < retries && isRetryable(e)) {
+                    DatabaseMetrics.logger().warning("Transazione annullata (" + e.getMessage() + "), nuovo tentativo " + (attempt + 1) + "/" + retries);
+                    backoff(attempt);
+                    continue;
+                }
+                failed = true;
+                fail("transaction", "*", null, e);
+                return null;
+            } finally {
+                DatabaseMetrics.record("transaction", "*", null, System.nanoTime() - start, 0, failed);
             }
+        }
+    }
+
+    /**
+     * Esegue {@code task} su una sola connessione in autocommit: niente atomicità, ma un solo
+     * checkout dal pool e statement riusati per tutte le operazioni.
+     */
+    public static boolean session(Session.Task task) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        Session session = null;
+        try (Connection conn = getConnection()) {
+            session = new Session(conn);
+            task.run(session);
+            return true;
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed = true;
+            fail("session", "*", null, e);
             return false;
+        } finally {
+            if (session != null) {
+                session.close();
+                session.invalidateWritten();
+            }
+            DatabaseMetrics.record("session", "*", null, System.nanoTime() - start, 0, failed);
         }
     }
 
-    public static boolean hasString(String databaseName, String tableName, String value) {
-        String query = "SELECT 1 FROM `" + databaseName + "`.`" + tableName + "` WHERE `value` = ? LIMIT 1";
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(query)) {
-            ps.setString(1, value);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+    private static <T> T runTransaction(Connection conn, int isolation, Session.Function<T> work) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        int previousIsolation = conn.getTransactionIsolation();
+        Session session = new Session(conn);
+        try {
+            if (isolation != previousIsolation) conn.setTransactionIsolation(isolation);
+            conn.setAutoCommit(false);
+            T result;
+            try {
+                result = work.apply(session);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
             }
+            session.invalidateWritten();
+            return result;
+        } finally {
+            session.close();
+            conn.setAutoCommit(autoCommit);
+            if (isolation != previousIsolation) conn.setTransactionIsolation(previousIsolation);
+        }
+    }
+
+    private static int defaultIsolation() {
+        switch (Config.getData(String.class, "transactions.isolation", "REPEATABLE_READ").toUpperCase()) {
+            case "READ_UNCOMMITTED":
+                return Connection.TRANSACTION_READ_UNCOMMITTED;
+            case "READ_COMMITTED":
+                return Connection.TRANSACTION_READ_COMMITTED;
+            case "SERIALIZABLE":
+                return Connection.TRANSACTION_SERIALIZABLE;
+            default:
+                return Connection.TRANSACTION_REPEATABLE_READ;
+        }
+    }
+
+    // 40001: serialization failure/deadlock, 1213: ER_LOCK_DEADLOCK, 1205: ER_LOCK_WAIT_TIMEOUT
+    private static boolean isRetryable(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            if ("40001".equals(current.getSQLState()) || current.getErrorCode() == 1213 || current.getErrorCode() == 1205) return true;
+        }
+        return false;
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep((10L << attempt) + ThreadLocalRandom.current().nextInt(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Esegue {@code call} su una connessione del pool registrando tempo, righe ed esito in
+     * {@link DatabaseMetrics}. In caso di errore restituisce {@code fallback}.
+     */
+    static <T> T execute(String operation, String databaseName, String tableName, T fallback, SqlCall<T> call) {
+        return execute(operation, databaseName, tableName, fallback, DatabaseAPI::getConnection, call);
+    }
+
+    /**
+     * Come {@link #execute(String, String, String, Object, SqlCall)} ma su una replica, se configurata
+     * e se {@code key} non è stata scritta di recente ({@code null} per letture su tutta la tabella).
+     */
+    static <T> T executeRead(String operation, String databaseName, String tableName, String key, T fallback, SqlCall<T> call) {
+        return execute(operation, databaseName, tableName, fallback, () -> ReplicaRouter.getReadConnection(databaseName, tableName, key), call);
+    }
+
+    private static <T> T execute(String operation, String databaseName, String tableName, T fallback, ConnectionSource source, SqlCall<T> call) {
+        long start = System.nanoTime();
+        T result = fallback;
+        boolean failed = false;
+        try (Connection conn = source.getConnection()) {
+            result = call.call(conn);
+            return result;
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed = true;
+            fail(operation, databaseName, tableName, e);
+            return fallback;
+        } finally {
+            DatabaseMetrics.record(operation, databaseName, tableName, System.nanoTime() - start, rows(result), failed);
+        }
+    }
+
+    /**
+     * Come {@link #journalReplayed(String, String, String, String)} per le operazioni su tutta la tabella.
+     */
+    static boolean journalReplayed(String operation, String databaseName, String tableName) {
+        try {
+            WriteJournal.requireTableReplayed(operation, databaseName, tableName);
+            return true;
+        } catch (DatabaseException e) {
+            fail(operation, databaseName, tableName, e);
+            return false;
+        }
+    }
+
+    /**
+     * {@code false} (con l'errore registrato per {@link #attempt}) se {@code key} ha ancora scritture nel
+     * {@link WriteJournal} non riapplicate.
+     */
+    private static boolean journalReplayed(String operation, String databaseName, String tableName, String key) {
+        try {
+            WriteJournal.requireReplayed(operation, databaseName, tableName, key);
+            return true;
+        } catch (DatabaseException e) {
+            fail(operation, databaseName, tableName, e);
             return false;
         }
     }
 
+    /**
+     * Come {@link #execute(String, String, String, Object, SqlCall)} per una scrittura, ma restituisce
+     * l'errore ({@code null} se è andata a buon fine) per decidere se passarla al {@link WriteJournal}.
+     */
+    private static DatabaseException write(String operation, String databaseName, String tableName, SqlCall<Integer> call) {
+        long start = System.nanoTime();
+        int rows = 0;
+        boolean failed = false;
+        try (Connection conn = getConnection()) {
+            rows = call.call(conn);
+            return null;
+        } catch (SQLException e) {
+            failed = true;
+            fail(operation, databaseName, tableName, e);
+            return DatabaseException.of(operation, e);
+        } finally {
+            DatabaseMetrics.record(operation, databaseName, tableName, System.nanoTime() - start, rows, failed);
+        }
+    }
+
+    /**
+     * Esegue {@code call} (una o più chiamate di {@code DatabaseAPI}) e restituisce il valore insieme al
+     * primo errore avvenuto su questo thread durante la chiamata, invece del solo valore di fallback.
+     * <pre>
+     * Result&lt;String&gt; result = DatabaseAPI.attempt(() -&gt; DatabaseAPI.getString("db", "table", key));
+     * if (!result.isSuccess() &amp;&amp; result.getError().isTransient()) { ... riprova più tardi ... }
+     * </pre>
+     */
+    public static <T> Result<T> attempt(Supplier<T> call) {
+        DatabaseException outer = lastError.get();
+        lastError.remove();
+        try {
+            T value = call.get();
+            DatabaseException error = lastError.get();
+            return error == null ? Result.success(value) : Result.failure(error);
+        } finally {
+            // Un attempt annidato non deve nascondere l'errore a quello esterno
+            DatabaseException error = lastError.get();
+            if (outer != null || error == null) lastError.set(outer);
+        }
+    }
+
+    public static Result<Void> attempt(Runnable call) {
+        return attempt(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Registra l'errore per {@link #attempt} e lo scrive nel log su una riga. Gli errori a circuito aperto
+     * non vengono scritti: il {@link CircuitBreaker} segnala già l'apertura una volta sola.
+     */
+    static void fail(String operation, String databaseName, String tableName, SQLException e) {
+        DatabaseException error = DatabaseException.of(operation, e);
+        if (lastError.get() == null) lastError.set(error);
+        if (error.getKind() == DatabaseException.Kind.CIRCUIT_OPEN) return;
+        String target = tableName == null ? databaseName : databaseName + "." + tableName;
+        DatabaseMetrics.logger().warning("Operazione " + operation + " su " + target + " fallita (" + error.getKind() + "): " + e.getMessage());
+    }
+
+    private static Map<String, String> columns(String... namesAndTypes) {
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndTypes.length; i += 2) {
+            columns.put(namesAndTypes[i], namesAndTypes[i + 1]);
+        }
+        return Collections.unmodifiableMap(columns);
+    }
+
+    private static long rows(Object result) {
+        if (result instanceof Number) return ((Number) result).longValue();
+        if (result instanceof Boolean) return (Boolean) result ? 1 : 0;
+        return result == null ? 0 : 1;
+    }
+
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface StatementBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface SqlCall<T> {
+        T call(Connection conn) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    static void written(String databaseName, String tableName, String key) {
+        DatabaseCache.invalidate(databaseName, tableName, key);
+        ReplicaRouter.recordWrite(databaseName, tableName, key);
+        InvalidationBus.publish(databaseName, tableName, key);
+    }
+
+    static void writtenAll(String databaseName, String tableName) {
+        DatabaseCache.invalidateAll(databaseName, tableName);
+        ReplicaRouter.recordWrite(databaseName, tableName, null);
+        InvalidationBus.publish(databaseName, tableName, null);
+    }
+
+    public static List<String> getTables(String databaseName) {
+        List<String> known = SchemaCatalog.getTables(databaseName);
+        if (known != null) return known;
+        List<String> tables = new ArrayList<>();
+        String sql = "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = ?";
+        execute("getTables", databaseName, null, 0, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, databaseName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        tables.add(rs.getString("TABLE_NAME"));
+                    }
+                }
+            }
+            return tables.size();
+        });
+        return tables;
+    }
+
+    public static boolean hasKey(String databaseName, String tableName, String key) {
+        if (WriteBehindQueue.isPending(databaseName, tableName, key)) return true;
+        Boolean journaled = WriteJournal.exists(databaseName, tableName, key);
+        if (journaled != null) return journaled;
+        DatabaseCache.TableCache cache = DatabaseCache.get(databaseName, tableName);
+        if (cache != null) {
+            Boolean exists = cache.exists(key);
+            if (exists != null) return exists;
+        }
+        long generation = cache != null ? cache.generation(key) : 0;
+        String query = table(databaseName, tableName).existsByKey;
+        return executeRead("hasKey", databaseName, tableName, key, false, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                ps.setString(1, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    boolean exists = rs.next();
+                    if (cache != null) cache.putExists(generation, key, exists);
+                    return exists;
+                }
+            }
+        });
+    }
+
+    public static boolean hasString(String databaseName, String tableName, String value) {
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("hasString", databaseName, tableName)) return false;
+        TableHandle handle = table(databaseName, tableName);
+        boolean hashed = isValueHashed(handle);
+        String query = hashed ? handle.existsByValueHash : handle.existsByValue;
+        return executeRead("hasString", databaseName, tableName, null, false, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                ps.setString(1, value);
+                if (hashed) ps.setString(2, value);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        });
+    }
+
     public static boolean hasObject(String databaseName, String tableName, Object value) {
-        String json = gson.toJson(value);
+        String json = Codecs.encode(value);
         return hasString(databaseName, tableName, json);
     }
+
+    /**
+     * Chiavi delle righe il cui JSON ha {@code value} in {@code path}. Usa l'indice creato con
+     * {@link #addJsonIndex} se esiste, altrimenti scansiona la tabella.
+     */
+    public static List<String> getKeysByJson(String databaseName, String tableName, String path, Object value) {
+        WriteBehindQueue.flush(databaseName, tableName);
+        if (!journalReplayed("getKeysByJson", databaseName, tableName)) return new ArrayList<>();
+        TableHandle handle = table(databaseName, tableName);
+        String column = TableHandle.jsonColumnName(path);
+        boolean indexed = columnNames(handle).contains(column);
+        String sql = indexed ? handle.column(column).selectKeysWhere : handle.selectKeysByJsonPath;
+        // JSON_UNQUOTE restituisce le stringhe senza virgolette e numeri e booleani come testo JSON
+        String text = value instanceof String ? (String) value : Codecs.encode(value);
+        List<String> keys = new ArrayList<>();
+        executeRead("getKeysByJson", databaseName, tableName, null, 0, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int index = 1;
+                if (!indexed) ps.setString(index++, path);
+                ps.setString(index, text);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        keys.add(rs.getString("key"));
+                    }
+                }
+            }
+            return keys.size();
+        });
+        return keys;
+    }
 }
@@ -0,0 +1,192 @@
+package dev.ayoangelo.databasemanager.api;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache di lettura opzionale, per tabella, davanti a {@code getString}, {@code getData},
+ * {@code getStringFromColumn} e {@code hasKey}. Ogni tabella ha una dimensione massima (eviction LRU)
+ * e un TTL; le chiavi assenti vengono memorizzate anch'esse, così anche {@code hasKey == false} è servito
+ * dalla cache. Le scritture di {@link DatabaseAPI} invalidano automaticamente le chiavi coinvolte.
+ */
+public class DatabaseCache {
+    private static final Map<String, TableCache> caches = new ConcurrentHashMap<>();
+
+    public static TableCache enable(String databaseName, String tableName, int maxSize, long ttl, TimeUnit unit) {
+        TableCache cache = new TableCache(maxSize, unit.toNanos(ttl));
+        caches.put(id(databaseName, tableName), cache);
+        return cache;
+    }
+
+    public static void disable(String databaseName, String tableName) {
+        caches.remove(id(databaseName, tableName));
+    }
+
+    public static TableCache get(String databaseName, String tableName) {
+        if (caches.isEmpty()) return null;
+        return caches.get(id(databaseName, tableName));
+    }
+
+    public static void invalidate(String databaseName, String tableName, String key) {
+        TableCache cache = get(databaseName, tableName);
+        if (cache != null) cache.invalidate(key);
+    }
+
+    public static void invalidateAll(String databaseName, String tableName) {
+        TableCache cache = get(databaseName, tableName);
+        if (cache != null) cache.invalidateAll();
+    }
+
+    private static String id(String databaseName, String tableName) {
+        return databaseName + "." + tableName;
+    }
+
+    public static final class Hit {
+        static final Hit ABSENT = new Hit(null);
+        private final String value;
+
+        private Hit(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    public static final class TableCache {
+        // Contatori di generazione a strisce: un'invalidazione scarta solo i caricamenti delle chiavi
+        // nella stessa striscia, non quelli di tutta la tabella
+        private static final int STRIPES = 64;
+        private final int maxSize;
+        private final long ttlNanos;
+        private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LinkedHashMap<String, Row> rows;
+
+        private TableCache(int maxSize, long ttlNanos) {
+            this.maxSize = Math.max(1, maxSize);
+            this.ttlNanos = ttlNanos;
+            this.rows = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Row> eldest) {
+                    if (size() <= TableCache.this.maxSize) return false;
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Da leggere prima della query: i {@code put} con una generazione superata da
+         * un'invalidazione della chiave nel frattempo vengono ignorati, così un valore vecchio non rientra in cache.
+         */
+        public long generation(String key) {
+            return generations.get(stripe(key));
+        }
+
+        public synchronized Hit get(String key, String columnName) {
+            Row row = row(key);
+            if (row != null) {
+                if (!row.exists) {
+                    hits.increment();
+                    return Hit.ABSENT;
+                }
+                if (row.columns.containsKey(columnName)) {
+                    hits.increment();
+                    return new Hit(row.columns.get(columnName));
+                }
+            }
+            misses.increment();
+            return null;
+        }
+
+        public synchronized Boolean exists(String key) {
+            Row row = row(key);
+            if (row == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return row.exists;
+        }
+
+        public synchronized void putValue(long generation, String key, String columnName, String value) {
+            if (generation != generation(key)) return;
+            Row row = row(key);
+            if (row == null || !row.exists) {
+                row = new Row(System.nanoTime() + ttlNanos, true);
+                rows.put(key, row);
+            }
+            row.columns.put(columnName, value);
+        }
+
+        public synchronized void putExists(long generation, String key, boolean exists) {
+            if (generation != generation(key)) return;
+            Row row = row(key);
+            if (row != null && row.exists == exists) return;
+            rows.put(key, new Row(System.nanoTime() + ttlNanos, exists));
+        }
+
+        public synchronized void invalidate(String key) {
+            generations.incrementAndGet(stripe(key));
+            rows.remove(key);
+        }
+
+        public synchronized void invalidateAll() {
+            for (int i = 0; i < STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            rows.clear();
+        }
+
+        public synchronized int size() {
+            return rows.size();
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        public long getEvictions() {
+            return evictions.sum();
+        }
+
+        private static int stripe(String key) {
+            int hash = key.hashCode();
+            return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+        }
+
+        private Row row(String key) {
+            Row row = rows.get(key);
+            if (row != null && row.expiresAt - System.nanoTime() < 0) {
+                rows.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return row;
+        }
+    }
+
+    private static final class Row {
+        private final long expiresAt;
+        private final boolean exists;
+        private final Map<String, String> columns = new HashMap<>();
+
+        private Row(long expiresAt, boolean exists) {
+            this.expiresAt = expiresAt;
+            this.exists = exists;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package dev.ayoangelo.databasemanager.api;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Errore di un'operazione di {@link DatabaseAPI}, classificato in {@link Kind}. Si ottiene dal
+ * {@link Result} di {@link DatabaseAPI#attempt}; le chiamate normali continuano a restituire il valore di
+ * fallback ({@code null}, {@code false}, lista vuota).
+ */
+public class DatabaseException extends SQLException {
+    public enum Kind {
+        /** Il circuit breaker è aperto: la chiamata è fallita subito, senza provare a connettersi. */
+        CIRCUIT_OPEN,
+        /** Database irraggiungibile o connessione persa (incluso il timeout di attesa del pool). */
+        UNAVAILABLE,
+        /** Query interrotta per timeout o lock wait timeout. */
+        TIMEOUT,
+        /** Coda dell'executor asincrono piena o task a bassa priorità scartato. */
+        OVERLOADED,
+        /** Violazione di un vincolo (chiave duplicata, NOT NULL, foreign key). */
+        CONSTRAINT,
+        /** Pool chiuso o DatabaseManager non ancora abilitato. */
+        CLOSED,
+        /** Qualsiasi altro errore SQL. */
+        QUERY
+    }
+
+    private final Kind kind;
+    private final String operation;
+
+    public DatabaseException(Kind kind, String operation, String message) {
+        super(message);
+        this.kind = kind;
+        this.operation = operation;
+    }
+
+    private DatabaseException(Kind kind, String operation, SQLException cause) {
+        super(cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+        this.kind = kind;
+        this.operation = operation;
+    }
+
+    static DatabaseException of(String operation, SQLException e) {
+        if (e instanceof DatabaseException) {
+            DatabaseException error = (DatabaseException) e;
+            return error.operation.equals(operation) ? error : new DatabaseException(error.kind, operation, error);
+        }
+        return new DatabaseException(classify(e), operation, e);
+    }
+
+    // 08xxx: errori di connessione, 23xxx: vincoli, 1205: ER_LOCK_WAIT_TIMEOUT, 3024: ER_QUERY_TIMEOUT
+    private static Kind classify(SQLException e) {
+        String state = e.getSQLState() == null ? "" : e.getSQLState();
+        if (e instanceof SQLTransientConnectionException || e instanceof SQLRecoverableException || state.startsWith("08")) return Kind.UNAVAILABLE;
+        if (e instanceof SQLTimeoutException || e.getErrorCode() == 1205 || e.getErrorCode() == 3024) return Kind.TIMEOUT;
+        if (e instanceof SQLIntegrityConstraintViolationException || state.startsWith("23")) return Kind.CONSTRAINT;
+        return Kind.QUERY;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Nome dell'operazione fallita (es. {@code getString}), come nelle metriche.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * {@code true} se l'errore dipende dalla disponibilità del database e ha senso riprovare più tardi.
+     */
+    public boolean isTransient() {
+        return kind == Kind.CIRCUIT_OPEN || kind == Kind.UNAVAILABLE || kind == Kind.TIMEOUT || kind == Kind.OVERLOADED;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " in " + operation + ": " + getMessage();
+    }
+}
@@ -0,0 +1,187 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import dev.ayoangelo.databasemanager.DatabaseManager;
+import dev.ayoangelo.databasemanager.utils.Config;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Tempi, righe ed errori di ogni operazione di {@link DatabaseAPI}, divisi per operazione e tabella,
+ * più le statistiche del pool Hikari. Disponibili via JMX ({@value #OBJECT_NAME}) e con {@code /dbstats}.
+ */
+public class DatabaseMetrics {
+    public static final String OBJECT_NAME = "dev.ayoangelo.databasemanager:type=DatabaseStats";
+    private static final long MAX_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final Map<String, Map<String, OperationStats>> operations = new ConcurrentHashMap<>();
+    private static final OperationStats connectionWait = new OperationStats("getConnection", "pool");
+    private static final LongAdder slowQueries = new LongAdder();
+
+    public static boolean isEnabled() {
+        return Config.getData(Boolean.class, "metrics.enabled", true);
+    }
+
+    public static void record(String operation, String databaseName, String tableName, long nanos, long rows, boolean failed) {
+        if (!isEnabled()) return;
+        String table = tableName == null ? databaseName : databaseName + "." + tableName;
+        Map<String, OperationStats> byTable = operations.get(operation);
+        if (byTable == null) byTable = operations.computeIfAbsent(operation, op -> new ConcurrentHashMap<>());
+        OperationStats stats = byTable.get(table);
+        if (stats == null) stats = byTable.computeIfAbsent(table, t -> new OperationStats(operation, t));
+        stats.record(nanos, rows, failed);
+
+        long thresholdMillis = Config.getData(Integer.class, "metrics.slow-query-ms", 100);
+        if (thresholdMillis > 0 && nanos >= TimeUnit.MILLISECONDS.toNanos(thresholdMillis)) {
+            slowQueries.increment();
+            logger().warning("Query lenta: " + operation + " su " + table + " in " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms (" + rows + " righe)");
+        }
+    }
+
+    public static void recordConnectionWait(long nanos, boolean failed) {
+        if (!isEnabled()) return;
+        connectionWait.record(nanos, failed ? 0 : 1, failed);
+    }
+
+    public static List<OperationStats> getOperations() {
+        List<OperationStats> list = new ArrayList<>();
+        for (Map<String, OperationStats> byTable : operations.values()) {
+            list.addAll(byTable.values());
+        }
+        list.sort(Comparator.comparingLong(OperationStats::getTotalMicros).reversed());
+        return list;
+    }
+
+    public static OperationStats getConnectionWait() {
+        return connectionWait;
+    }
+
+    public static HikariPoolMXBean getPool() {
+        return DatabaseAPI.getPoolMXBean();
+    }
+
+    public static long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    public static void reset() {
+        operations.clear();
+        connectionWait.reset();
+        slowQueries.reset();
+    }
+
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(new DatabaseStats(), name);
+        } catch (Exception e) {
+            logger().warning("Impossibile registrare le statistiche JMX: " + e.getMessage());
+        }
+    }
+
+    public static void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (Exception e) {
+            logger().warning("Impossibile rimuovere le statistiche JMX: " + e.getMessage());
+        }
+    }
+
+    static Logger logger() {
+        DatabaseManager plugin = DatabaseManager.getInstance();
+        return plugin != null ? plugin.getLogger() : Logger.getLogger("DatabaseManager");
+    }
+
+    public static final class OperationStats {
+        private final String operation;
+        private final String table;
+        private final Recorder recorder = new Recorder(MAX_TRACKABLE_MICROS, 2);
+        private final Histogram histogram = new Histogram(MAX_TRACKABLE_MICROS, 2);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private Histogram interval;
+
+        private OperationStats(String operation, String table) {
+            this.operation = operation;
+            this.table = table;
+        }
+
+        private void record(long nanos, long rows, boolean failed) {
+            long micros = Math.min(MAX_TRACKABLE_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+            recorder.recordValue(micros);
+            count.increment();
+            totalMicros.add(micros);
+            this.rows.add(rows);
+            if (failed) errors.increment();
+        }
+
+        /**
+         * Copia dell'istogramma di tutte le latenze registrate finora, in microsecondi.
+         */
+        public synchronized Histogram getHistogram() {
+            interval = recorder.getIntervalHistogram(interval);
+            histogram.add(interval);
+            return histogram.copy();
+        }
+
+        private synchronized void reset() {
+            recorder.reset();
+            histogram.reset();
+            count.reset();
+            rows.reset();
+            errors.reset();
+            totalMicros.reset();
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getTotalMicros() {
+            return totalMicros.sum();
+        }
+
+        @Override
+        public String toString() {
+            Histogram snapshot = getHistogram();
+            return String.format("%s %s: %d chiamate, p50 %.2f ms, p99 %.2f ms, max %.2f ms, %d righe, %d errori",
+                    operation, table, getCount(),
+                    snapshot.getValueAtPercentile(50) / 1000.0,
+                    snapshot.getValueAtPercentile(99) / 1000.0,
+                    snapshot.getMaxValue() / 1000.0,
+                    getRows(), getErrors());
+        }
+    }
+}
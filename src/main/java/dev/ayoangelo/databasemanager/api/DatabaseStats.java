@@ -0,0 +1,50 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+public class DatabaseStats implements DatabaseStatsMBean {
+
+    @Override
+    public int getActiveConnections() {
+        HikariPoolMXBean pool = DatabaseMetrics.getPool();
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        HikariPoolMXBean pool = DatabaseMetrics.getPool();
+        return pool == null ? 0 : pool.getIdleConnections();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        HikariPoolMXBean pool = DatabaseMetrics.getPool();
+        return pool == null ? 0 : pool.getTotalConnections();
+    }
+
+    @Override
+    public int getThreadsAwaitingConnection() {
+        HikariPoolMXBean pool = DatabaseMetrics.getPool();
+        return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+    }
+
+    @Override
+    public double getConnectionWaitP99Millis() {
+        return DatabaseMetrics.getConnectionWait().getHistogram().getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public long getSlowQueries() {
+        return DatabaseMetrics.getSlowQueries();
+    }
+
+    @Override
+    public String[] getOperations() {
+        return DatabaseMetrics.getOperations().stream().map(DatabaseMetrics.OperationStats::toString).toArray(String[]::new);
+    }
+
+    @Override
+    public void reset() {
+        DatabaseMetrics.reset();
+    }
+}
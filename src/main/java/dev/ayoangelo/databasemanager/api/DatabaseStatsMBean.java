@@ -0,0 +1,20 @@
+package dev.ayoangelo.databasemanager.api;
+
+public interface DatabaseStatsMBean {
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getTotalConnections();
+
+    int getThreadsAwaitingConnection();
+
+    double getConnectionWaitP99Millis();
+
+    long getSlowQueries();
+
+    String[] getOperations();
+
+    void reset();
+}
@@ -0,0 +1,178 @@
+package dev.ayoangelo.databasemanager.api;
+
+import dev.ayoangelo.databasemanager.utils.Config;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Propaga agli altri server della rete le modifiche fatte da questo processo, così che le cache
+ * locali ({@link DatabaseCache}) restino coerenti quando più server scrivono sullo stesso database.
+ * Ogni scrittura di {@link DatabaseAPI} pubblica {@code (database, tabella, chiave)}; le modifiche
+ * ricevute dagli altri server vengono rimosse dalla cache locale. Il trasporto di default è una
+ * tabella di changelog su MySQL letta in polling, in alternativa il plugin messaging di BungeeCord,
+ * oppure uno personalizzato con {@link #start(Transport)}.
+ */
+public class InvalidationBus {
+    public static final String SERVER_ID = UUID.randomUUID().toString();
+    private static final Queue<Change> outgoing = new ConcurrentLinkedQueue<>();
+    private static volatile Transport transport;
+    private static ScheduledExecutorService ticker;
+
+    public static boolean isEnabled() {
+        return Config.getData(Boolean.class, "invalidation.enabled", false);
+    }
+
+    /**
+     * Avvia il trasporto scelto in {@code invalidation.transport} ({@code mysql} o {@code plugin-messaging}).
+     */
+    public static void start(Plugin plugin) {
+        String name = Config.getData(String.class, "invalidation.transport", "mysql");
+        if (name.equalsIgnoreCase("plugin-messaging")) {
+            start(new PluginMessageTransport(plugin));
+        } else {
+            start(new ChangelogTransport());
+        }
+    }
+
+    public static synchronized void start(Transport newTransport) {
+        stop();
+        transport = newTransport;
+        long interval = Math.max(20, Config.getData(Integer.class, "invalidation.interval-ms", 200));
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DatabaseManager-Invalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // L'avvio del trasporto (es. creazione della tabella di changelog) avviene sul thread del bus,
+        // fuori dal thread principale; le modifiche pubblicate nel frattempo restano in coda
+        ticker.execute(() -> newTransport.start(InvalidationBus::receive));
+        ticker.scheduleWithFixedDelay(InvalidationBus::tick, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Invia le modifiche ancora in coda e ferma il trasporto.
+     */
+    public static synchronized void stop() {
+        Transport current = transport;
+        if (current == null) return;
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ticker = null;
+        publishPending(current);
+        transport = null;
+        current.stop();
+    }
+
+    /**
+     * Accoda la modifica di una chiave ({@code key == null} per l'intera tabella). Viene inviata al
+     * prossimo giro del trasporto insieme alle altre.
+     */
+    static void publish(String databaseName, String tableName, String key) {
+        if (transport == null) return;
+        outgoing.add(new Change(SERVER_ID, databaseName, tableName, key));
+    }
+
+    static void receive(Change change) {
+        if (SERVER_ID.equals(change.getOrigin())) return;
+        if (change.getKey() == null) {
+            DatabaseCache.invalidateAll(change.getDatabaseName(), change.getTableName());
+        } else {
+            DatabaseCache.invalidate(change.getDatabaseName(), change.getTableName(), change.getKey());
+        }
+    }
+
+    private static void tick() {
+        Transport current = transport;
+        if (current == null) return;
+        try {
+            publishPending(current);
+            current.poll();
+        } catch (RuntimeException e) {
+            DatabaseMetrics.logger().warning("Errore nel bus di invalidazione: " + e);
+        }
+    }
+
+    private static void publishPending(Transport current) {
+        if (outgoing.isEmpty()) return;
+        Set<Change> batch = new LinkedHashSet<>();
+        Change change;
+        while ((change = outgoing.poll()) != null) {
+            batch.add(change);
+        }
+        current.publish(new ArrayList<>(batch));
+    }
+
+    public interface Transport {
+        void start(Consumer<Change> receiver);
+
+        void publish(List<Change> changes);
+
+        /**
+         * Chiamato periodicamente dal thread del bus, per i trasporti che leggono in polling.
+         */
+        default void poll() {
+        }
+
+        void stop();
+    }
+
+    public static final class Change {
+        private final String origin;
+        private final String databaseName;
+        private final String tableName;
+        private final String key;
+
+        public Change(String origin, String databaseName, String tableName, String key) {
+            this.origin = origin;
+            this.databaseName = databaseName;
+            this.tableName = tableName;
+            this.key = key;
+        }
+
+        public String getOrigin() {
+            return origin;
+        }
+
+        public String getDatabaseName() {
+            return databaseName;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Change)) return false;
+            Change other = (Change) o;
+            return origin.equals(other.origin) && databaseName.equals(other.databaseName)
+                    && tableName.equals(other.tableName) && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(origin, databaseName, tableName, key);
+        }
+    }
+}
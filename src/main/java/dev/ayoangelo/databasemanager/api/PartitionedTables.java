@@ -0,0 +1,236 @@
+package dev.ayoangelo.databasemanager.api;
+
+import dev.ayoangelo.databasemanager.utils.Config;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manutenzione delle tabelle create con {@link DatabaseAPI#createPartitionedTablesIfNotExist}, partizionate
+ * per giorno di inserimento ({@code RANGE (TO_DAYS(created))}, {@code partitioning.days-per-partition}
+ * giorni per partizione). Periodicamente crea in anticipo le partizioni dei prossimi giorni e rimuove con
+ * un {@code DROP PARTITION} quelle più vecchie della retention, invece di cancellare le righe una per una.
+ * Con {@code partitioning.archive} le partizioni scadute vengono spostate (senza copiare dati, con
+ * {@code EXCHANGE PARTITION}) in tabelle {@code <tabella>_p<data>} prima di essere rimosse.
+ */
+public class PartitionedTables {
+    // TO_DAYS('1970-01-01'): converte i giorni di MySQL in giorni dall'epoch di LocalDate
+    private static final long EPOCH_TO_DAYS = 719528;
+    private static final String FUTURE = "pfuture";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+    private static final Map<String, Retention> tables = new ConcurrentHashMap<>();
+    private static BukkitTask task;
+
+    static int daysPerPartition() {
+        return Math.max(1, Config.getData(Integer.class, "partitioning.days-per-partition", 1));
+    }
+
+    private static int precreate() {
+        return Math.max(1, Config.getData(Integer.class, "partitioning.precreate", 3));
+    }
+
+    /**
+     * {@code CREATE TABLE} con una partizione da oggi, {@code partitioning.precreate} partizioni future e
+     * {@code pfuture} per le righe oltre l'ultima, finché la manutenzione non ne aggiunge altre.
+     */
+    static String createSql(String databaseName, String tableName) {
+        int span = daysPerPartition();
+        long start = LocalDate.now().toEpochDay() + EPOCH_TO_DAYS;
+        StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS `").append(databaseName).append("`.`").append(tableName)
+                .append("` (`id` BIGINT NOT NULL AUTO_INCREMENT, `value` TEXT, `created` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, ")
+                .append("PRIMARY KEY (`id`, `created`)) PARTITION BY RANGE (TO_DAYS(`created`)) (");
+        List<String> partitions = partitions(start, start + (long) span * (precreate() + 1), span);
+        partitions.add("PARTITION " + FUTURE + " VALUES LESS THAN MAXVALUE");
+        return sql.append(String.join(", ", partitions)).append(')').toString();
+    }
+
+    /**
+     * Tiene le righe di {@code tableName} per {@code retentionDays} giorni (0 = per sempre). Lo chiama
+     * {@link DatabaseAPI#createPartitionedTablesIfNotExist}.
+     */
+    static void register(String databaseName, String tableName, int retentionDays) {
+        tables.put(databaseName + "." + tableName, new Retention(databaseName, tableName, retentionDays));
+    }
+
+    /**
+     * Avvia la manutenzione ogni {@code partitioning.check-interval-minutes} minuti, come task
+     * {@link AsyncDatabaseAPI.Priority#LOW}: sotto carico viene rimandata al giro successivo.
+     */
+    public static synchronized void start(Plugin plugin) {
+        stop();
+        long ticks = Math.max(1, Config.getData(Integer.class, "partitioning.check-interval-minutes", 60)) * 60L * 20L;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, () -> AsyncDatabaseAPI.run(PartitionedTables::maintainAll, AsyncDatabaseAPI.Priority.LOW), 20L * 60, ticks);
+    }
+
+    public static synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public static void maintainAll() {
+        for (Retention retention : tables.values()) {
+            maintain(retention.databaseName, retention.tableName);
+        }
+    }
+
+    /**
+     * Aggiunge le partizioni mancanti e rimuove quelle scadute di una tabella registrata.
+     */
+    public static boolean maintain(String databaseName, String tableName) {
+        Retention retention = tables.get(databaseName + "." + tableName);
+        if (retention == null) return false;
+        List<String> removed = new ArrayList<>();
+        Boolean done = DatabaseAPI.execute("partitionMaintenance", databaseName, tableName, false, conn -> {
+            List<Partition> partitions = read(conn, databaseName, tableName);
+            if (partitions.isEmpty()) throw new SQLException("La tabella " + databaseName + "." + tableName + " non è partizionata");
+            long today;
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT TO_DAYS(NOW())")) {
+                rs.next();
+                today = rs.getLong(1);
+            }
+            addPartitions(conn, retention, partitions, today);
+            if (retention.days > 0) removed.addAll(dropPartitions(conn, retention, partitions, today - retention.days));
+            return true;
+        });
+        if (!removed.isEmpty()) {
+            DatabaseAPI.writtenAll(databaseName, tableName);
+            DatabaseMetrics.logger().info("Partizioni scadute di " + databaseName + "." + tableName + " rimosse: " + String.join(", ", removed));
+        }
+        return Boolean.TRUE.equals(done);
+    }
+
+    private static void addPartitions(Connection conn, Retention retention, List<Partition> partitions, long today) throws SQLException {
+        int span = daysPerPartition();
+        long last = Long.MIN_VALUE;
+        boolean future = false;
+        for (Partition partition : partitions) {
+            if (partition.bound == null) future = true;
+            else last = Math.max(last, partition.bound);
+        }
+        List<String> added = partitions(last == Long.MIN_VALUE ? today : last, today + (long) span * (precreate() + 1), span);
+        if (added.isEmpty()) return;
+        try (Statement stmt = conn.createStatement()) {
+            if (future) {
+                // pfuture di solito è vuota: riorganizzarla non sposta righe
+                added.add("PARTITION " + FUTURE + " VALUES LESS THAN MAXVALUE");
+                stmt.executeUpdate("ALTER TABLE " + retention.table() + " REORGANIZE PARTITION " + FUTURE + " INTO (" + String.join(", ", added) + ")");
+            } else {
+                stmt.executeUpdate("ALTER TABLE " + retention.table() + " ADD PARTITION (" + String.join(", ", added) + ")");
+            }
+        }
+    }
+
+    /**
+     * Rimuove le partizioni che contengono solo righe più vecchie di {@code cutoff} (in giorni di MySQL).
+     */
+    private static List<String> dropPartitions(Connection conn, Retention retention, List<Partition> partitions, long cutoff) throws SQLException {
+        List<String> expired = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.bound != null && partition.bound <= cutoff) expired.add(partition.name);
+        }
+        if (expired.isEmpty()) return expired;
+        if (Config.getData(Boolean.class, "partitioning.archive", false)) {
+            expired.removeIf(name -> !archive(conn, retention, name));
+            if (expired.isEmpty()) return expired;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + retention.table() + " DROP PARTITION " + String.join(", ", expired));
+        }
+        return expired;
+    }
+
+    /**
+     * Scambia la partizione con una tabella vuota non partizionata, che resta come archivio. Se l'archivio
+     * esiste già (manutenzione interrotta dopo lo scambio) la partizione viene rimossa solo se è vuota.
+     */
+    private static boolean archive(Connection conn, Retention retention, String partition) {
+        String name = retention.tableName.length() > 54 ? retention.tableName.substring(0, 54) : retention.tableName;
+        String archive = "`" + retention.databaseName + "`.`" + name + "_" + partition + "`";
+        try (Statement stmt = conn.createStatement()) {
+            if (DatabaseAPI.tableExist(retention.databaseName, name + "_" + partition)) {
+                try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + retention.table() + " PARTITION (" + partition + ") LIMIT 1")) {
+                    if (!rs.next()) return true;
+                }
+                DatabaseMetrics.logger().warning("Archivio " + archive + " già presente e partizione " + partition + " non vuota: partizione non rimossa");
+                return false;
+            }
+            stmt.executeUpdate("CREATE TABLE " + archive + " LIKE " + retention.table());
+            stmt.executeUpdate("ALTER TABLE " + archive + " REMOVE PARTITIONING");
+            stmt.executeUpdate("ALTER TABLE " + retention.table() + " EXCHANGE PARTITION " + partition + " WITH TABLE " + archive);
+            SchemaCatalog.tableCreated(retention.databaseName, name + "_" + partition, DatabaseAPI.PARTITIONED_COLUMNS);
+            return true;
+        } catch (SQLException e) {
+            DatabaseAPI.fail("partitionArchive", retention.databaseName, retention.tableName, e);
+            return false;
+        }
+    }
+
+    private static List<Partition> read(Connection conn, String databaseName, String tableName) throws SQLException {
+        String sql = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM INFORMATION_SCHEMA.PARTITIONS "
+                + "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION";
+        List<Partition> partitions = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, databaseName);
+            ps.setString(2, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String description = rs.getString(2);
+                    partitions.add(new Partition(rs.getString(1), "MAXVALUE".equalsIgnoreCase(description) ? null : Long.parseLong(description)));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Definizioni delle partizioni da {@code from} a {@code to} (giorni di MySQL), una ogni {@code span} giorni.
+     */
+    private static List<String> partitions(long from, long to, int span) {
+        List<String> partitions = new ArrayList<>();
+        for (long start = from; start < to; start += span) {
+            String name = LocalDate.ofEpochDay(start - EPOCH_TO_DAYS).format(PARTITION_NAME);
+            partitions.add("PARTITION " + name + " VALUES LESS THAN (" + (start + span) + ")");
+        }
+        return partitions;
+    }
+
+    private static final class Retention {
+        private final String databaseName;
+        private final String tableName;
+        private final int days;
+
+        private Retention(String databaseName, String tableName, int days) {
+            this.databaseName = databaseName;
+            this.tableName = tableName;
+            this.days = Math.max(0, days);
+        }
+
+        private String table() {
+            return "`" + databaseName + "`.`" + tableName + "`";
+        }
+    }
+
+    private static final class Partition {
+        private final String name;
+        private final Long bound;
+
+        private Partition(String name, Long bound) {
+            this.name = name;
+            this.bound = bound;
+        }
+    }
+}
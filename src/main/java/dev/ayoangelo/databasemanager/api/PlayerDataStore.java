@@ -0,0 +1,414 @@
+package dev.ayoangelo.databasemanager.api;
+
+import dev.ayoangelo.databasemanager.utils.Config;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dati dei giocatori tenuti in memoria mentre sono online. Le tabelle registrate con {@link #register}
+ * vengono lette tutte in {@code AsyncPlayerPreLoginEvent} (fuori dal main thread), poi letture e scritture
+ * di {@link PlayerTable} non toccano il database: le colonne modificate vengono salvate in batch
+ * dall'autosave ({@code player-data.autosave-interval}) e all'uscita, dopo la quale il giocatore viene
+ * rimosso dalla memoria. I salvataggi sono eseguiti uno dopo l'altro nell'ordine in cui sono stati
+ * raccolti, così un autosave non può sovrascrivere valori più recenti salvati all'uscita.
+ * <pre>
+ * PlayerTable stats = PlayerDataStore.register("game", "stats");
+ * int kills = stats.getData(Integer.class, player.getUniqueId(), "kills");
+ * stats.setData(player.getUniqueId(), "kills", kills + 1);
+ * </pre>
+ */
+public class PlayerDataStore {
+    // Giocatori caricati in pre-login che non sono mai entrati (connessione caduta durante il login)
+    private static final long UNCLAIMED_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final Map<String, PlayerTable> tables = new ConcurrentHashMap<>();
+    private static final Map<UUID, Profile> players = new ConcurrentHashMap<>();
+    private static final Object saveLock = new Object();
+    private static CompletableFuture<Void> lastSave = CompletableFuture.completedFuture(null);
+    private static BukkitTask autosave;
+
+    public static boolean isEnabled() {
+        return Config.getData(Boolean.class, "player-data.enabled", true);
+    }
+
+    /**
+     * Registra una tabella già creata (es. con {@link DatabaseAPI#createMultiColumnTableIfNotExist}) da
+     * caricare per ogni giocatore. Va chiamato in {@code onEnable}: per i giocatori già online la
+     * tabella viene caricata al primo accesso.
+     */
+    public static PlayerTable register(String databaseName, String tableName) {
+        TableHandle handle = DatabaseAPI.table(databaseName, tableName);
+        return tables.computeIfAbsent(handle.toString(), id -> new PlayerTable(handle));
+    }
+
+    public static boolean isLoaded(UUID player) {
+        return players.containsKey(player);
+    }
+
+    public static int getLoadedCount() {
+        return players.size();
+    }
+
+    /**
+     * Carica tutte le tabelle registrate per {@code player}, bloccando il thread chiamante. Se il
+     * giocatore è ancora in memoria (è rientrato prima che l'uscita fosse salvata) vengono tenuti quei
+     * valori, più recenti di quelli sul database. Restituisce {@code false} se una lettura è fallita.
+     */
+    public static boolean load(UUID player) {
+        Profile existing = players.get(player);
+        if (existing != null && existing.claim()) return true;
+        Profile profile = new Profile();
+        for (PlayerTable table : tables.values()) {
+            Row row = loadRow(player, table);
+            if (row == null) return false;
+            profile.rows.put(table, row);
+        }
+        players.put(player, profile);
+        return true;
+    }
+
+    /**
+     * Salva in background le colonne modificate di {@code player} e lo rimuove dalla memoria. Se il
+     * salvataggio fallisce i dati restano in memoria e vengono ritentati dal prossimo autosave.
+     */
+    public static CompletableFuture<Void> unload(UUID player) {
+        Profile profile = players.get(player);
+        if (profile == null) return CompletableFuture.completedFuture(null);
+        profile.leave();
+        return save(Map.of(player, profile));
+    }
+
+    public static CompletableFuture<Void> saveAll() {
+        return save(new HashMap<>(players));
+    }
+
+    /**
+     * Avvia l'autosave sul main thread: lì vengono solo raccolte le modifiche, la scrittura avviene su
+     * {@link AsyncDatabaseAPI}.
+     */
+    public static void start(Plugin plugin) {
+        stopAutosave();
+        long seconds = Config.getData(Integer.class, "player-data.autosave-interval", 300);
+        if (seconds <= 0) return;
+        long ticks = seconds * 20;
+        autosave = Bukkit.getScheduler().runTaskTimer(plugin, PlayerDataStore::autosave, ticks, ticks);
+    }
+
+    /**
+     * Ferma l'autosave e salva sul thread chiamante tutto ciò che è ancora in memoria. Va chiamato
+     * prima di {@link AsyncDatabaseAPI#shutdown()}.
+     */
+    public static void shutdown() {
+        stopAutosave();
+        CompletableFuture<Void> pending;
+        synchronized (saveLock) {
+            pending = lastSave;
+        }
+        pending.exceptionally(e -> null).join();
+        Map<PlayerTable, List<Change>> changes;
+        synchronized (saveLock) {
+            changes = collect(players.values());
+        }
+        int unsaved = 0;
+        for (Map.Entry<PlayerTable, List<Change>> entry : changes.entrySet()) {
+            if (!write(entry.getKey(), entry.getValue())) unsaved += entry.getValue().size();
+        }
+        if (unsaved > 0) DatabaseMetrics.logger().warning("Dati di " + unsaved + " righe di giocatori non salvati alla chiusura");
+        players.clear();
+    }
+
+    private static synchronized void stopAutosave() {
+        if (autosave != null) {
+            autosave.cancel();
+            autosave = null;
+        }
+    }
+
+    private static void autosave() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<UUID, Profile> entry : players.entrySet()) {
+            Profile profile = entry.getValue();
+            if (now - profile.loadedAt > UNCLAIMED_MILLIS && Bukkit.getPlayer(entry.getKey()) == null) profile.leave();
+        }
+        saveAll();
+    }
+
+    /**
+     * Raccoglie le modifiche e accoda la loro scrittura dopo quella del salvataggio precedente. Terminata
+     * la scrittura vengono rimossi i giocatori usciti che non hanno più modifiche da salvare.
+     */
+    private static CompletableFuture<Void> save(Map<UUID, Profile> profiles) {
+        synchronized (saveLock) {
+            Map<PlayerTable, List<Change>> changes = collect(profiles.values());
+            CompletableFuture<Void> previous = lastSave;
+            CompletableFuture<Void> next = changes.isEmpty() ? previous : previous.thenCompose(v -> AsyncDatabaseAPI.run(() -> {
+                changes.forEach(PlayerDataStore::write);
+            })).exceptionally(e -> {
+                // Executor sovraccarico o già chiuso: le modifiche tornano in memoria
+                changes.values().forEach(list -> list.forEach(Change::restore));
+                return null;
+            });
+            lastSave = next.thenRun(() -> profiles.forEach((player, profile) -> {
+                if (profile.evict()) players.remove(player, profile);
+            }));
+            return lastSave;
+        }
+    }
+
+    private static Map<PlayerTable, List<Change>> collect(Collection<Profile> profiles) {
+        Map<PlayerTable, List<Change>> changes = new HashMap<>();
+        for (Profile profile : profiles) {
+            profile.rows.forEach((table, row) -> {
+                Map<String, String> columns = row.takeDirty();
+                if (!columns.isEmpty()) changes.computeIfAbsent(table, t -> new ArrayList<>()).add(new Change(row, columns));
+            });
+        }
+        return changes;
+    }
+
+    /**
+     * Scrive le modifiche di una tabella in una transazione, con un batch per colonna: le righe che hanno
+     * modificato la stessa colonna condividono lo statement.
+     */
+    private static boolean write(PlayerTable table, List<Change> changes) {
+        TableHandle handle = table.handle;
+        // Righe con scritture ancora nel journal: le nuove vanno in coda a quelle
+        changes = new ArrayList<>(changes);
+        changes.removeIf(change -> WriteJournal.isPending(handle.getDatabaseName(), handle.getTableName(), change.row.key) && journal(handle, change));
+        if (changes.isEmpty()) return true;
+        Map<String, List<Change>> byColumn = new LinkedHashMap<>();
+        for (Change change : changes) {
+            for (String columnName : change.columns.keySet()) {
+                byColumn.computeIfAbsent(columnName, c -> new ArrayList<>()).add(change);
+            }
+        }
+        int batchSize = Math.max(1, Config.getData(Integer.class, "player-data.batch-size", 500));
+        Result<Integer> result = DatabaseAPI.attempt(() -> DatabaseAPI.execute("playerDataSave", handle.getDatabaseName(), handle.getTableName(), null, conn -> {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                int count = 0;
+                for (Map.Entry<String, List<Change>> column : byColumn.entrySet()) {
+                    try (PreparedStatement ps = conn.prepareStatement(handle.column(column.getKey()).upsert)) {
+                        int batched = 0;
+                        for (Change change : column.getValue()) {
+                            ps.setString(1, change.row.key);
+                            ps.setString(2, change.columns.get(column.getKey()));
+                            ps.addBatch();
+                            if (++batched % batchSize == 0) ps.executeBatch();
+                        }
+                        if (batched % batchSize != 0) ps.executeBatch();
+                        count += batched;
+                    }
+                }
+                conn.commit();
+                return count;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }));
+        if (!result.isSuccess()) {
+            // Un errore permanente (valore troppo lungo, vincolo violato) annulla tutta la transazione: riprovando
+            // riga per riga vengono salvate le altre, invece di riproporle tutte a ogni salvataggio
+            List<Change> unsaved = result.getError().isTransient() ? changes : writeEach(handle, changes);
+            // Database irraggiungibile: le modifiche restano al sicuro nel journal invece che solo in memoria
+            boolean journaled = true;
+            for (Change change : unsaved) {
+                if (!journaled || !journal(handle, change)) {
+                    change.restore();
+                    journaled = false;
+                }
+            }
+            return journaled;
+        }
+        for (Change change : changes) {
+            DatabaseAPI.written(handle.getDatabaseName(), handle.getTableName(), change.row.key);
+        }
+        return true;
+    }
+
+    /**
+     * Scrive le modifiche una colonna alla volta scartando quelle rifiutate dal database. Restituisce le
+     * modifiche non scritte per un errore temporaneo, da mettere nel journal.
+     */
+    private static List<Change> writeEach(TableHandle handle, List<Change> changes) {
+        String databaseName = handle.getDatabaseName();
+        String tableName = handle.getTableName();
+        List<Change> unsaved = new ArrayList<>();
+        Set<String> saved = new LinkedHashSet<>();
+        try (Connection conn = DatabaseAPI.getConnection()) {
+            for (Change change : changes) {
+                if (!unsaved.isEmpty()) {
+                    unsaved.add(change);
+                    continue;
+                }
+                for (Map.Entry<String, String> column : change.columns.entrySet()) {
+                    try (PreparedStatement ps = conn.prepareStatement(handle.column(column.getKey()).upsert)) {
+                        ps.setString(1, change.row.key);
+                        ps.setString(2, column.getValue());
+                        ps.executeUpdate();
+                        saved.add(change.row.key);
+                    } catch (SQLException e) {
+                        if (DatabaseException.of("playerDataSave", e).isTransient()) {
+                            // Le colonne già scritte vengono riscritte con lo stesso valore
+                            unsaved.add(change);
+                            break;
+                        }
+                        DatabaseMetrics.logger().warning("Salvataggio di " + databaseName + "." + tableName + "." + column.getKey() + " per " + change.row.key + " scartato: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            // Connessione non ottenuta: nessuna modifica è stata scritta
+            DatabaseAPI.fail("playerDataSave", databaseName, tableName, e);
+            return changes;
+        }
+        for (String key : saved) {
+            DatabaseAPI.written(databaseName, tableName, key);
+        }
+        return unsaved;
+    }
+
+    private static boolean journal(TableHandle handle, Change change) {
+        for (Map.Entry<String, String> column : change.columns.entrySet()) {
+            if (!WriteJournal.appendUpsert(handle.getDatabaseName(), handle.getTableName(), column.getKey(), change.row.key, column.getValue())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Riga di {@code player} in {@code table} se il giocatore è caricato, letta al primo accesso se la
+     * tabella è stata registrata dopo il suo ingresso; {@code null} se non è caricato.
+     */
+    static Row row(UUID player, PlayerTable table) {
+        Profile profile = players.get(player);
+        if (profile == null) return null;
+        Row row = profile.rows.get(table);
+        if (row != null) return row;
+        row = loadRow(player, table);
+        if (row == null) return null;
+        Row previous = profile.rows.putIfAbsent(table, row);
+        return previous != null ? previous : row;
+    }
+
+    // Sempre dal primario: una replica potrebbe non avere ancora il salvataggio fatto all'uscita
+    private static Row loadRow(UUID player, PlayerTable table) {
+        String key = player.toString();
+        TableHandle handle = table.handle;
+        if (WriteBehindQueue.isPending(handle.getDatabaseName(), handle.getTableName(), key)) {
+            WriteBehindQueue.flush(handle.getDatabaseName(), handle.getTableName());
+        }
+        Map<String, String> values = DatabaseAPI.execute("playerDataLoad", handle.getDatabaseName(), handle.getTableName(), null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(handle.selectRow)) {
+                ps.setString(1, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    Map<String, String> row = new HashMap<>();
+                    if (rs.next()) {
+                        ResultSetMetaData meta = rs.getMetaData();
+                        for (int i = 1; i <= meta.getColumnCount(); i++) {
+                            String name = meta.getColumnLabel(i);
+                            if (!name.equals("key")) row.put(name, rs.getString(i));
+                        }
+                    }
+                    return row;
+                }
+            }
+        });
+        if (values == null) return null;
+        WriteJournal.applyTo(handle.getDatabaseName(), handle.getTableName(), key, values);
+        return new Row(key, values);
+    }
+
+    private static final class Profile {
+        private final Map<PlayerTable, Row> rows = new ConcurrentHashMap<>();
+        private volatile long loadedAt = System.currentTimeMillis();
+        private boolean leaving;
+        private boolean evicted;
+
+        private synchronized boolean claim() {
+            if (evicted) return false;
+            leaving = false;
+            loadedAt = System.currentTimeMillis();
+            return true;
+        }
+
+        private synchronized void leave() {
+            leaving = true;
+        }
+
+        private synchronized boolean evict() {
+            if (!leaving || evicted) return false;
+            for (Row row : rows.values()) {
+                if (row.isDirty()) return false;
+            }
+            evicted = true;
+            return true;
+        }
+    }
+
+    static final class Row {
+        private final String key;
+        private final Map<String, String> values;
+        private final Set<String> dirty = new HashSet<>();
+
+        private Row(String key, Map<String, String> values) {
+            this.key = key;
+            this.values = values;
+        }
+
+        synchronized String get(String columnName) {
+            return values.get(columnName);
+        }
+
+        synchronized void set(String columnName, String value) {
+            values.put(columnName, value);
+            dirty.add(columnName);
+        }
+
+        private synchronized boolean isDirty() {
+            return !dirty.isEmpty();
+        }
+
+        private synchronized Map<String, String> takeDirty() {
+            if (dirty.isEmpty()) return Map.of();
+            Map<String, String> changed = new HashMap<>();
+            for (String columnName : dirty) {
+                changed.put(columnName, values.get(columnName));
+            }
+            dirty.clear();
+            return changed;
+        }
+
+        private synchronized void markDirty(Set<String> columnNames) {
+            dirty.addAll(columnNames);
+        }
+    }
+
+    private static final class Change {
+        private final Row row;
+        private final Map<String, String> columns;
+
+        private Change(Row row, Map<String, String> columns) {
+            this.row = row;
+            this.columns = columns;
+        }
+
+        // Una colonna modificata di nuovo nel frattempo è già segnata: resta il valore più recente
+        private void restore() {
+            row.markDirty(columns.keySet());
+        }
+    }
+}
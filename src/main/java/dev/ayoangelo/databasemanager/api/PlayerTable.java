@@ -0,0 +1,83 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.util.UUID;
+
+/**
+ * Tabella registrata in {@link PlayerDataStore}, con una riga per giocatore ({@code key} = UUID).
+ * Per i giocatori caricati letture e scritture restano in memoria e le colonne modificate vengono
+ * salvate dall'autosave o all'uscita; per gli altri passano direttamente a {@link DatabaseAPI}.
+ * Le colonne devono essere testuali (TEXT, VARCHAR, JSON).
+ */
+public final class PlayerTable {
+    final TableHandle handle;
+
+    PlayerTable(TableHandle handle) {
+        this.handle = handle;
+    }
+
+    public String getDatabaseName() {
+        return handle.getDatabaseName();
+    }
+
+    public String getTableName() {
+        return handle.getTableName();
+    }
+
+    public String getString(UUID player) {
+        return getString(player, "value");
+    }
+
+    public String getString(UUID player, String columnName) {
+        TableHandle.checkIdentifier(columnName);
+        PlayerDataStore.Row row = PlayerDataStore.row(player, this);
+        if (row != null) return row.get(columnName);
+        return DatabaseAPI.getStringFromColumn(getDatabaseName(), getTableName(), player.toString(), columnName);
+    }
+
+    public <T> T getData(Class<T> type, UUID player, String columnName) {
+        return getData(Codecs.get(type), player, columnName);
+    }
+
+    public <T> T getData(TypeToken<T> type, UUID player, String columnName) {
+        return getData(Codecs.get(type), player, columnName);
+    }
+
+    public <T> T getData(Codec<T> codec, UUID player, String columnName) {
+        String data = getString(player, columnName);
+        if (data == null) return null;
+        return codec.decode(data);
+    }
+
+    public void setString(UUID player, String value) {
+        setString(player, "value", value);
+    }
+
+    /**
+     * Imposta il valore in memoria e segna la colonna come modificata; se il giocatore non è caricato
+     * lo scrive subito con {@link DatabaseAPI#saveStringInColumn}.
+     */
+    public void setString(UUID player, String columnName, String value) {
+        TableHandle.checkIdentifier(columnName);
+        PlayerDataStore.Row row = PlayerDataStore.row(player, this);
+        if (row != null) {
+            row.set(columnName, value);
+            return;
+        }
+        DatabaseAPI.saveStringInColumn(getDatabaseName(), getTableName(), player.toString(), columnName, value);
+    }
+
+    public void setData(UUID player, String columnName, Object value) {
+        setString(player, columnName, value == null ? null : Codecs.encode(value));
+    }
+
+    public <T> void setData(UUID player, String columnName, T value, Codec<T> codec) {
+        setString(player, columnName, value == null ? null : codec.encode(value));
+    }
+
+    @Override
+    public String toString() {
+        return handle.toString();
+    }
+}
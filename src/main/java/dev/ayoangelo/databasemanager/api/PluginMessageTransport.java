@@ -0,0 +1,205 @@
+package dev.ayoangelo.databasemanager.api;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Trasporto di {@link InvalidationBus} sul canale {@code BungeeCord} ({@code Forward ALL}). Non richiede
+ * tabelle aggiuntive, ma il plugin messaging passa attraverso i giocatori: un server senza giocatori
+ * online non riceve i messaggi e non può inviarli (le modifiche restano in coda finché qualcuno non entra;
+ * oltre {@link #MAX_PENDING} le più vecchie diventano invalidazioni dell'intera tabella).
+ */
+public class PluginMessageTransport implements InvalidationBus.Transport, PluginMessageListener {
+    private static final String CHANNEL = "BungeeCord";
+    private static final String SUBCHANNEL = "DatabaseManager-Invalidate";
+    // Limite di Bukkit per un plugin message (32766 byte), meno l'intestazione di Forward
+    private static final int MAX_PAYLOAD = 32766 - 64;
+    public static final int MAX_PENDING = 10000;
+
+    private final Plugin plugin;
+    private final List<InvalidationBus.Change> pending = new ArrayList<>();
+    private volatile Consumer<InvalidationBus.Change> receiver;
+
+    public PluginMessageTransport(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void start(Consumer<InvalidationBus.Change> receiver) {
+        this.receiver = receiver;
+        plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+        plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+    }
+
+    @Override
+    public void publish(List<InvalidationBus.Change> changes) {
+        synchronized (pending) {
+            pending.addAll(changes);
+            collapse();
+        }
+        if (plugin.isEnabled()) Bukkit.getScheduler().runTask(plugin, this::send);
+    }
+
+    @Override
+    public void stop() {
+        receiver = null;
+        plugin.getServer().getMessenger().unregisterIncomingPluginChannel(plugin);
+        plugin.getServer().getMessenger().unregisterOutgoingPluginChannel(plugin);
+    }
+
+    private void send() {
+        Player carrier = null;
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            carrier = player;
+            break;
+        }
+        if (carrier == null) return;
+        List<InvalidationBus.Change> changes;
+        synchronized (pending) {
+            changes = new ArrayList<>(pending);
+            pending.clear();
+        }
+        List<InvalidationBus.Change> unsent = new ArrayList<>();
+        for (Message message : split(changes)) {
+            try {
+                carrier.sendPluginMessage(plugin, CHANNEL, message.bytes);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                DatabaseMetrics.logger().warning("Invio delle invalidazioni via plugin message fallito: " + e.getMessage());
+                unsent.addAll(message.changes);
+            }
+        }
+        if (!unsent.isEmpty()) {
+            // Riprovate al prossimo invio, prima delle modifiche arrivate nel frattempo
+            synchronized (pending) {
+                pending.addAll(0, unsent);
+                collapse();
+            }
+        }
+    }
+
+    /**
+     * Oltre {@link #MAX_PENDING} le tabelle delle modifiche più vecchie ricevono una sola invalidazione
+     * completa ({@code key == null}) al posto delle singole chiavi: meno precisa, ma nessuna modifica va
+     * persa. Da chiamare con il lock di {@code pending}.
+     */
+    private void collapse() {
+        if (pending.size() <= MAX_PENDING) return;
+        Map<String, InvalidationBus.Change> tables = new LinkedHashMap<>();
+        for (InvalidationBus.Change change : pending.subList(0, pending.size() - MAX_PENDING)) {
+            tables.putIfAbsent(change.getDatabaseName() + "." + change.getTableName(),
+                    new InvalidationBus.Change(change.getOrigin(), change.getDatabaseName(), change.getTableName(), null));
+        }
+        pending.removeIf(change -> tables.containsKey(change.getDatabaseName() + "." + change.getTableName()));
+        pending.addAll(0, tables.values());
+    }
+
+    /**
+     * Raggruppa le modifiche in messaggi che restano sotto il limite di dimensione di Bukkit.
+     */
+    private static List<Message> split(List<InvalidationBus.Change> changes) {
+        List<Message> messages = new ArrayList<>();
+        List<InvalidationBus.Change> group = new ArrayList<>();
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        int header = InvalidationBus.SERVER_ID.length() + 6;
+        for (InvalidationBus.Change change : changes) {
+            byte[] entry;
+            try {
+                entry = entry(change);
+            } catch (IOException e) {
+                entry = null;
+            }
+            if (entry == null || header + entry.length > MAX_PAYLOAD) {
+                DatabaseMetrics.logger().warning("Invalidazione di " + change.getDatabaseName() + "." + change.getTableName() + " troppo grande per un plugin message, scartata");
+                continue;
+            }
+            if (header + entries.size() + entry.length > MAX_PAYLOAD) {
+                messages.add(new Message(group, forward(group.size(), entries)));
+                group = new ArrayList<>();
+                entries = new ByteArrayOutputStream();
+            }
+            group.add(change);
+            entries.write(entry, 0, entry.length);
+        }
+        if (!group.isEmpty()) messages.add(new Message(group, forward(group.size(), entries)));
+        return messages;
+    }
+
+    private static byte[] entry(InvalidationBus.Change change) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream entry = new DataOutputStream(bytes);
+        entry.writeUTF(change.getDatabaseName());
+        entry.writeUTF(change.getTableName());
+        entry.writeBoolean(change.getKey() != null);
+        if (change.getKey() != null) entry.writeUTF(change.getKey());
+        return bytes.toByteArray();
+    }
+
+    private static byte[] forward(int count, ByteArrayOutputStream entries) {
+        try {
+            ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+            DataOutputStream payload = new DataOutputStream(payloadBytes);
+            payload.writeUTF(InvalidationBus.SERVER_ID);
+            payload.writeInt(count);
+            entries.writeTo(payload);
+
+            ByteArrayOutputStream messageBytes = new ByteArrayOutputStream();
+            DataOutputStream message = new DataOutputStream(messageBytes);
+            message.writeUTF("Forward");
+            message.writeUTF("ALL");
+            message.writeUTF(SUBCHANNEL);
+            message.writeShort(payloadBytes.size());
+            message.write(payloadBytes.toByteArray());
+            return messageBytes.toByteArray();
+        } catch (IOException e) {
+            // Scrive solo in memoria
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        Consumer<InvalidationBus.Change> current = receiver;
+        if (current == null || !CHANNEL.equals(channel)) return;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+            if (!SUBCHANNEL.equals(in.readUTF())) return;
+            byte[] payloadBytes = new byte[in.readUnsignedShort()];
+            in.readFully(payloadBytes);
+            DataInputStream payload = new DataInputStream(new ByteArrayInputStream(payloadBytes));
+            String origin = payload.readUTF();
+            int count = payload.readInt();
+            for (int i = 0; i < count; i++) {
+                String databaseName = payload.readUTF();
+                String tableName = payload.readUTF();
+                String key = payload.readBoolean() ? payload.readUTF() : null;
+                current.accept(new InvalidationBus.Change(origin, databaseName, tableName, key));
+            }
+        } catch (IOException e) {
+            DatabaseMetrics.logger().warning("Plugin message di invalidazione non valido: " + e.getMessage());
+        }
+    }
+
+    private static final class Message {
+        private final List<InvalidationBus.Change> changes;
+        private final byte[] bytes;
+
+        private Message(List<InvalidationBus.Change> changes, byte[] bytes) {
+            this.changes = changes;
+            this.bytes = bytes;
+        }
+    }
+}
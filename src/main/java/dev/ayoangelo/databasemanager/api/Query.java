@@ -0,0 +1,343 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Query con filtri, ordinamento e limite eseguiti sul database, creata con {@link DatabaseAPI#select}.
+ * I campi possono essere colonne ({@code "level"}) o percorsi JSON nella colonna letta ({@code "$.stats.kills"});
+ * un percorso indicizzato con {@link DatabaseAPI#addJsonIndex} usa la colonna generata e quindi l'indice.
+ * Il testo SQL dipende solo dalla forma della query (campi, operatori, ordinamento) e viene costruito una
+ * volta per tabella; valori, limite e offset sono parametri. Vengono trasferite e decodificate solo le
+ * righe restituite.
+ * <pre>
+ * Map&lt;String, PlayerStats&gt; top = DatabaseAPI.select("game", "stats")
+ *         .where("$.banned", Query.Op.EQ, false)
+ *         .orderByDescending("$.level")
+ *         .limit(10)
+ *         .entries(PlayerStats.class);
+ * </pre>
+ */
+public final class Query {
+    private final TableHandle table;
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private String columnName = "value";
+    private long limit = -1;
+    private long offset;
+
+    Query(TableHandle table) {
+        this.table = table;
+    }
+
+    public enum Op {
+        EQ("="), NE("<>"), LT("<"), LE("<="), GT(">"), GE(">="), LIKE("LIKE");
+
+        private final String sql;
+
+        Op(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /**
+     * Colonna restituita e su cui si applicano i percorsi JSON (di default {@code value}).
+     */
+    public Query column(String columnName) {
+        this.columnName = TableHandle.checkIdentifier(columnName);
+        return this;
+    }
+
+    public Query where(String field, Object value) {
+        return where(field, Op.EQ, value);
+    }
+
+    /**
+     * Aggiunge una condizione in AND con le precedenti. Un valore {@code null} diventa {@code IS NULL}
+     * ({@code IS NOT NULL} con {@link Op#NE}).
+     */
+    public Query where(String field, Op op, Object value) {
+        checkField(field);
+        if (value == null && op != Op.EQ && op != Op.NE) throw new IllegalArgumentException("null è ammesso solo con EQ e NE");
+        conditions.add(new Condition(field, op, value));
+        return this;
+    }
+
+    public Query orderBy(String field) {
+        orders.add(new Order(checkField(field), false));
+        return this;
+    }
+
+    public Query orderByDescending(String field) {
+        orders.add(new Order(checkField(field), true));
+        return this;
+    }
+
+    public Query limit(long limit) {
+        if (limit < 0) throw new IllegalArgumentException("limit negativo: " + limit);
+        this.limit = limit;
+        return this;
+    }
+
+    public Query offset(long offset) {
+        if (offset < 0) throw new IllegalArgumentException("offset negativo: " + offset);
+        this.offset = offset;
+        return this;
+    }
+
+    public List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        run("queryKeys", rs -> keys.add(rs.getString(1)));
+        return keys;
+    }
+
+    /**
+     * Chiave e valore (non decodificato) delle righe trovate, nell'ordine della query.
+     */
+    public LinkedHashMap<String, String> strings() {
+        LinkedHashMap<String, String> values = new LinkedHashMap<>();
+        run("queryStrings", rs -> values.put(rs.getString(1), rs.getString(2)));
+        return values;
+    }
+
+    public <T> LinkedHashMap<String, T> entries(Class<T> type) {
+        return entries(Codecs.get(type));
+    }
+
+    public <T> LinkedHashMap<String, T> entries(TypeToken<T> type) {
+        return entries(Codecs.get(type));
+    }
+
+    public <T> LinkedHashMap<String, T> entries(Codec<T> codec) {
+        LinkedHashMap<String, T> values = new LinkedHashMap<>();
+        strings().forEach((key, value) -> values.put(key, value == null ? null : codec.decode(value)));
+        return values;
+    }
+
+    public <T> List<T> list(Class<T> type) {
+        return new ArrayList<>(entries(type).values());
+    }
+
+    public <T> List<T> list(Codec<T> codec) {
+        return new ArrayList<>(entries(codec).values());
+    }
+
+    /**
+     * Prima riga trovata, o {@code null}. Se non è stato impostato un limite legge una sola riga.
+     */
+    public <T> T first(Class<T> type) {
+        long previous = limit;
+        if (limit < 0) limit = 1;
+        try {
+            List<T> values = list(type);
+            return values.isEmpty() ? null : values.get(0);
+        } finally {
+            limit = previous;
+        }
+    }
+
+    /**
+     * Come {@link #entries} ma decodifica le righe man mano che vengono consumate, con la connessione
+     * aperta fino alla chiusura dello stream (da usare con try-with-resources).
+     */
+    public <T> Stream<T> stream(Codec<T> codec) {
+        WriteBehindQueue.flush(table.getDatabaseName(), table.getTableName());
+        if (!DatabaseAPI.journalReplayed("queryStream", table.getDatabaseName(), table.getTableName())) return Stream.empty();
+        List<Object> parameters = new ArrayList<>();
+        String sql = compile(false, parameters);
+        return DatabaseAPI.streamQuery("queryStream", table.getDatabaseName(), table.getTableName(), sql,
+                ps -> bind(ps, parameters), rs -> {
+                    String value = rs.getString(2);
+                    return value == null ? null : codec.decode(value);
+                });
+    }
+
+    /**
+     * Numero di righe che soddisfano le condizioni (ordinamento, limite e offset vengono ignorati).
+     */
+    public long count() {
+        WriteBehindQueue.flush(table.getDatabaseName(), table.getTableName());
+        if (!DatabaseAPI.journalReplayed("queryCount", table.getDatabaseName(), table.getTableName())) return 0;
+        List<Object> parameters = new ArrayList<>();
+        String sql = compile(true, parameters);
+        Long count = DatabaseAPI.executeRead("queryCount", table.getDatabaseName(), table.getTableName(), null, null, conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                bind(ps, parameters);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            }
+        });
+        return count == null ? 0 : count;
+    }
+
+    private void run(String operation, RowConsumer consumer) {
+        WriteBehindQueue.flush(table.getDatabaseName(), table.getTableName());
+        if (!DatabaseAPI.journalReplayed(operation, table.getDatabaseName(), table.getTableName())) return;
+        List<Object> parameters = new ArrayList<>();
+        String sql = compile(false, parameters);
+        DatabaseAPI.executeRead(operation, table.getDatabaseName(), table.getTableName(), null, 0, conn -> {
+            int rows = 0;
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                bind(ps, parameters);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(rs);
+                        rows++;
+                    }
+                }
+            }
+            return rows;
+        });
+    }
+
+    /**
+     * Costruisce (o riprende dal {@link TableHandle}) il testo SQL per la forma di questa query e
+     * riempie {@code parameters} con i valori nell'ordine dei segnaposto.
+     */
+    private String compile(boolean count, List<Object> parameters) {
+        StringBuilder shape = new StringBuilder(count ? "C" : "S").append('|').append(columnName);
+        for (Condition condition : conditions) {
+            shape.append("|W").append(condition.field).append(' ').append(condition.op.name()).append(' ').append(placeholder(condition));
+            if (condition.value != null) parameters.add(condition.value instanceof Number || condition.value instanceof String
+                    ? condition.value : Codecs.encode(condition.value));
+        }
+        if (!count) {
+            for (Order order : orders) {
+                shape.append("|O").append(order.field).append(order.descending ? " D" : " A");
+            }
+            if (limit >= 0 || offset > 0) {
+                shape.append("|L");
+                parameters.add(limit >= 0 ? limit : Long.MAX_VALUE);
+                if (offset > 0) {
+                    shape.append("|F");
+                    parameters.add(offset);
+                }
+            }
+        }
+        // La forma include anche quali percorsi sono indicizzati: aggiungere un indice cambia il testo SQL
+        for (String field : fields()) {
+            if (indexed(field)) shape.append("|I").append(field);
+        }
+        return table.query(shape.toString(), () -> build(count));
+    }
+
+    private String build(boolean count) {
+        String column = "`" + columnName + "`";
+        StringBuilder sql = new StringBuilder(count ? "SELECT COUNT(*) FROM " : "SELECT `key`, " + column + " FROM ")
+                .append('`').append(table.getDatabaseName()).append("`.`").append(table.getTableName()).append('`');
+        List<String> where = new ArrayList<>();
+        // JSON_EXTRACT su un testo non JSON genera un errore: le righe non valide vengono escluse prima
+        for (String field : fields()) {
+            if (isPath(field) && !indexed(field)) {
+                where.add("JSON_VALID(" + column + ")");
+                break;
+            }
+        }
+        for (Condition condition : conditions) {
+            String expression = expression(condition.field, condition.op == Op.LIKE);
+            if (condition.value == null) {
+                where.add(expression + (condition.op == Op.EQ ? " IS NULL" : " IS NOT NULL"));
+            } else {
+                where.add(expression + " " + condition.op.sql + " " + placeholder(condition));
+            }
+        }
+        if (!where.isEmpty()) sql.append(" WHERE ").append(String.join(" AND ", where));
+        if (!count) {
+            List<String> orderBy = new ArrayList<>();
+            for (Order order : orders) {
+                orderBy.add(expression(order.field, false) + (order.descending ? " DESC" : ""));
+            }
+            if (!orderBy.isEmpty()) sql.append(" ORDER BY ").append(String.join(", ", orderBy));
+            if (limit >= 0 || offset > 0) {
+                sql.append(" LIMIT ?");
+                if (offset > 0) sql.append(" OFFSET ?");
+            }
+        }
+        return sql.toString();
+    }
+
+    private String expression(String field, boolean text) {
+        if (!isPath(field)) return "`" + field + "`";
+        if (indexed(field)) return "`" + TableHandle.jsonColumnName(field) + "`";
+        // Il percorso è già validato da checkJsonPath e può stare nel testo: resta costante per la forma
+        String extract = "JSON_EXTRACT(`" + columnName + "`, '" + field + "')";
+        return text ? "JSON_UNQUOTE(" + extract + ")" : extract;
+    }
+
+    /**
+     * Con un percorso JSON non indicizzato stringhe e numeri vengono confrontati direttamente con il
+     * valore JSON, gli altri tipi (booleani, oggetti) vanno convertiti in JSON.
+     */
+    private String placeholder(Condition condition) {
+        if (condition.value == null) return "NULL";
+        boolean plain = condition.value instanceof Number || condition.value instanceof String;
+        return plain || !isPath(condition.field) || indexed(condition.field) ? "?" : "CAST(? AS JSON)";
+    }
+
+    private boolean indexed(String field) {
+        return isPath(field) && columnName.equals("value")
+                && DatabaseAPI.columnNames(table).contains(TableHandle.jsonColumnName(field));
+    }
+
+    private List<String> fields() {
+        List<String> fields = new ArrayList<>();
+        for (Condition condition : conditions) fields.add(condition.field);
+        for (Order order : orders) fields.add(order.field);
+        return fields;
+    }
+
+    private static boolean isPath(String field) {
+        return field.startsWith("$");
+    }
+
+    private static String checkField(String field) {
+        return field != null && isPath(field) ? TableHandle.checkJsonPath(field) : TableHandle.checkIdentifier(field);
+    }
+
+    private static void bind(PreparedStatement ps, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            ps.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowConsumer {
+        void accept(ResultSet rs) throws SQLException;
+    }
+
+    private static final class Condition {
+        private final String field;
+        private final Op op;
+        private final Object value;
+
+        private Condition(String field, Op op, Object value) {
+            this.field = field;
+            this.op = op;
+            this.value = value;
+        }
+    }
+
+    private static final class Order {
+        private final String field;
+        private final boolean descending;
+
+        private Order(String field, boolean descending) {
+            this.field = field;
+            this.descending = descending;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return build(false);
+    }
+}
@@ -0,0 +1,216 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import dev.ayoangelo.databasemanager.utils.Config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Instradamento delle letture verso le repliche configurate in {@code replicas:}. Ogni replica ha il
+ * proprio pool Hikari; scritture e DDL restano sul primario. Per garantire read-your-writes le chiavi
+ * (e le tabelle) scritte da questo processo negli ultimi {@code replica-routing.read-your-writes-ms}
+ * millisecondi vengono lette dal primario, finché la replica non ha avuto il tempo di allinearsi.
+ * Una replica che non risponde viene esclusa per {@code replica-routing.failure-backoff-ms} millisecondi;
+ * scaduto l'intervallo la prima lettura la riprova, le altre continuano a saltarla fino all'esito.
+ */
+public class ReplicaRouter {
+    private static final Object replicasLock = new Object();
+    private static final AtomicInteger next = new AtomicInteger();
+    private static final Map<String, Map<String, TableWrites>> writes = new ConcurrentHashMap<>();
+    // Repliche escluse dopo un errore, con il System.nanoTime() fino al quale vengono saltate
+    private static final Map<HikariDataSource, Long> down = new ConcurrentHashMap<>();
+    private static final int PRUNE_THRESHOLD = 1024;
+    private static volatile List<HikariDataSource> replicas;
+
+    public static boolean hasReplicas() {
+        return !getReplicas().isEmpty();
+    }
+
+    /**
+     * Connessione per una lettura: una replica, oppure il primario se non ci sono repliche, se la
+     * chiave ({@code null} per le scansioni di tabella) è stata scritta di recente o se nessuna replica
+     * risponde.
+     */
+    static Connection getReadConnection(String databaseName, String tableName, String key) throws SQLException {
+        List<HikariDataSource> current = getReplicas();
+        if (current.isEmpty() || recentlyWritten(databaseName, tableName, key)) return DatabaseAPI.getConnection();
+        HikariDataSource replica = down.isEmpty() ? choose(current) : chooseAvailable(current);
+        if (replica == null) return DatabaseAPI.getConnection();
+        try {
+            Connection conn = replica.getConnection();
+            if (!down.isEmpty() && down.remove(replica) != null) DatabaseMetrics.logger().info("Replica " + replica.getPoolName() + " di nuovo disponibile");
+            return conn;
+        } catch (SQLException e) {
+            long backoff = failureBackoffMs();
+            if (down.put(replica, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff)) == null) {
+                DatabaseMetrics.logger().warning("Replica " + replica.getPoolName() + " non disponibile, esclusa per " + backoff + " ms: " + e.getMessage());
+            }
+            return DatabaseAPI.getConnection();
+        }
+    }
+
+    static Connection getReadConnection(String databaseName, String tableName, Collection<String> keys) throws SQLException {
+        if (getReplicas().isEmpty()) return DatabaseAPI.getConnection();
+        for (String key : keys) {
+            if (recentlyWritten(databaseName, tableName, key)) return DatabaseAPI.getConnection();
+        }
+        return getReadConnection(databaseName, tableName, (String) null);
+    }
+
+    /**
+     * Registra una scrittura sul primario; {@code key == null} indica una modifica che può toccare
+     * qualsiasi riga della tabella.
+     */
+    static void recordWrite(String databaseName, String tableName, String key) {
+        if (getReplicas().isEmpty()) return;
+        tableWrites(databaseName, tableName).record(key, System.nanoTime(), windowNanos());
+    }
+
+    static void recordWrites(String databaseName, String tableName, Collection<String> keys) {
+        if (getReplicas().isEmpty()) return;
+        TableWrites table = tableWrites(databaseName, tableName);
+        long now = System.nanoTime();
+        long window = windowNanos();
+        for (String key : keys) {
+            table.record(key, now, window);
+        }
+    }
+
+    /**
+     * Chiude i pool delle repliche; verranno ricreati dalla configurazione alla prossima lettura.
+     */
+    public static void close() {
+        List<HikariDataSource> previous;
+        synchronized (replicasLock) {
+            previous = replicas;
+            replicas = null;
+        }
+        if (previous != null) previous.forEach(HikariDataSource::close);
+        writes.clear();
+        down.clear();
+    }
+
+    private static boolean recentlyWritten(String databaseName, String tableName, String key) {
+        Map<String, TableWrites> byTable = writes.get(databaseName);
+        TableWrites table = byTable == null ? null : byTable.get(tableName);
+        return table != null && table.isRecent(key, System.nanoTime(), windowNanos());
+    }
+
+    /**
+     * Replica da usare quando alcune sono escluse: una con l'esclusione scaduta, che questa lettura
+     * riprova (rinnovando l'esclusione per le altre letture fino all'esito), altrimenti una di quelle
+     * attive; {@code null} se sono tutte escluse.
+     */
+    private static HikariDataSource chooseAvailable(List<HikariDataSource> current) {
+        long now = System.nanoTime();
+        long backoff = TimeUnit.MILLISECONDS.toNanos(failureBackoffMs());
+        List<HikariDataSource> available = new ArrayList<>(current.size());
+        for (HikariDataSource replica : current) {
+            Long until = down.get(replica);
+            if (until == null) {
+                available.add(replica);
+            } else if (now - until >= 0 && down.replace(replica, until, now + backoff)) {
+                return replica;
+            }
+        }
+        return available.isEmpty() ? null : choose(available);
+    }
+
+    private static HikariDataSource choose(List<HikariDataSource> current) {
+        if (current.size() == 1) return current.get(0);
+        if (!"least-connections".equalsIgnoreCase(Config.getData(String.class, "replica-routing.strategy", "round-robin"))) {
+            return current.get(Math.floorMod(next.getAndIncrement(), current.size()));
+        }
+        HikariDataSource best = current.get(0);
+        int bestLoad = Integer.MAX_VALUE;
+        for (HikariDataSource replica : current) {
+            HikariPoolMXBean pool = replica.getHikariPoolMXBean();
+            int load = pool == null ? 0 : pool.getActiveConnections() + pool.getThreadsAwaitingConnection();
+            if (load < bestLoad) {
+                best = replica;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    private static TableWrites tableWrites(String databaseName, String tableName) {
+        return writes.computeIfAbsent(databaseName, db -> new ConcurrentHashMap<>())
+                .computeIfAbsent(tableName, tbl -> new TableWrites());
+    }
+
+    private static long windowNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, Config.getData(Integer.class, "replica-routing.read-your-writes-ms", 1000)));
+    }
+
+    private static long failureBackoffMs() {
+        return Math.max(0, Config.getData(Integer.class, "replica-routing.failure-backoff-ms", 5000));
+    }
+
+    private static List<HikariDataSource> getReplicas() {
+        List<HikariDataSource> current = replicas;
+        if (current != null) return current;
+        if (DatabaseAPI.isClosed()) return List.of();
+        synchronized (replicasLock) {
+            if (replicas == null) replicas = createReplicas();
+            return replicas;
+        }
+    }
+
+    private static List<HikariDataSource> createReplicas() {
+        List<HikariDataSource> created = new ArrayList<>();
+        for (String name : Config.getKeys("replicas")) {
+            String path = "replicas." + name + ".";
+            String jdbcUrl = "jdbc:mysql://" + Config.getData(String.class, path + "ip", "localhost") + ":" + Config.getData(String.class, path + "port", "3306") + "/";
+            try {
+                created.add(DatabaseAPI.createDataSource("DatabaseManager-" + name, jdbcUrl,
+                        Config.getData(String.class, path + "user", Config.getData(String.class, "user", "root")),
+                        Config.getData(String.class, path + "password", Config.getData(String.class, "password", "password")),
+                        Math.max(1, Config.getData(Integer.class, path + "pool-size", DataSourceSettings.poolSize())),
+                        true));
+            } catch (RuntimeException e) {
+                DatabaseMetrics.logger().warning("Impossibile creare il pool della replica " + name + ": " + e.getMessage());
+            }
+        }
+        if (!created.isEmpty()) DatabaseMetrics.logger().info("Letture distribuite su " + created.size() + " repliche");
+        return List.copyOf(created);
+    }
+
+    private static final class TableWrites {
+        private final Map<String, Long> keys = new ConcurrentHashMap<>();
+        // System.nanoTime() può valere qualsiasi cosa, anche 0: i flag distinguono "mai scritto"
+        private volatile long lastTableWrite;
+        private volatile long lastAnyWrite;
+        private volatile boolean tableWritten;
+        private volatile boolean anyWritten;
+
+        private void record(String key, long now, long window) {
+            if (key == null) {
+                lastTableWrite = now;
+                tableWritten = true;
+            } else {
+                keys.put(key, now);
+            }
+            lastAnyWrite = now;
+            anyWritten = true;
+            if (keys.size() > PRUNE_THRESHOLD) keys.values().removeIf(time -> now - time > window);
+        }
+
+        private boolean isRecent(String key, long now, long window) {
+            if (!anyWritten) return false;
+            if (key == null) return now - lastAnyWrite < window;
+            if (tableWritten && now - lastTableWrite < window) return true;
+            Long time = keys.get(key);
+            return time != null && now - time < window;
+        }
+    }
+}
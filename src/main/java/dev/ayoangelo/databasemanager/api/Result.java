@@ -0,0 +1,47 @@
+package dev.ayoangelo.databasemanager.api;
+
+/**
+ * Esito di una chiamata eseguita con {@link DatabaseAPI#attempt}: il valore restituito oppure il
+ * {@link DatabaseException} che l'ha fatta fallire.
+ */
+public final class Result<T> {
+    private final T value;
+    private final DatabaseException error;
+
+    private Result(T value, DatabaseException error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    static <T> Result<T> success(T value) {
+        return new Result<>(value, null);
+    }
+
+    static <T> Result<T> failure(DatabaseException error) {
+        return new Result<>(null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Valore restituito dalla chiamata; {@code null} se è fallita.
+     */
+    public T getValue() {
+        return value;
+    }
+
+    public T orElse(T other) {
+        return error == null ? value : other;
+    }
+
+    public DatabaseException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return error == null ? "Result[" + value + "]" : "Result[" + error + "]";
+    }
+}
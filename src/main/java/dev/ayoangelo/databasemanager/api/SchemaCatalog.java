@@ -0,0 +1,171 @@
+package dev.ayoangelo.databasemanager.api;
+
+import dev.ayoangelo.databasemanager.utils.Config;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catalogo in memoria di database, tabelle e colonne, caricato da {@code INFORMATION_SCHEMA} con una
+ * sola query e poi tenuto aggiornato dai metodi DDL di {@link DatabaseAPI}. Serve {@code databaseExist},
+ * {@code tableExist}, {@code getTableType} e {@code getTables} senza round trip e rende gratuite le
+ * {@code create*IfNotExist} ripetute. Le modifiche fatte da altri processi si vedono solo dopo {@link #refresh()}.
+ */
+public class SchemaCatalog {
+    private static final String SYSTEM_SCHEMAS = "('information_schema', 'mysql', 'performance_schema', 'sys')";
+    private static final Object loadLock = new Object();
+    // database -> tabella -> colonna -> DATA_TYPE
+    private static volatile Map<String, Map<String, Map<String, String>>> schemas;
+
+    public static boolean isEnabled() {
+        return Config.getData(Boolean.class, "schema-cache.enabled", true);
+    }
+
+    public static boolean isLoaded() {
+        return schemas != null;
+    }
+
+    /**
+     * Ricarica l'intero catalogo. Restituisce {@code false} se la lettura fallisce: in quel caso il
+     * catalogo precedente viene scartato e le chiamate tornano a interrogare il database.
+     */
+    public static boolean refresh() {
+        synchronized (loadLock) {
+            schemas = load();
+            return schemas != null;
+        }
+    }
+
+    public static void clear() {
+        schemas = null;
+    }
+
+    /**
+     * Colonne della tabella con il relativo {@code DATA_TYPE}, nell'ordine della tabella,
+     * oppure {@code null} se la tabella non esiste o il catalogo non è disponibile.
+     */
+    public static Map<String, String> getColumns(String databaseName, String tableName) {
+        Map<String, Map<String, Map<String, String>>> current = catalog();
+        if (current == null) return null;
+        Map<String, Map<String, String>> tables = current.get(databaseName);
+        Map<String, String> columns = tables == null ? null : tables.get(tableName);
+        return columns == null ? null : Collections.unmodifiableMap(columns);
+    }
+
+    static Boolean databaseExist(String databaseName) {
+        Map<String, Map<String, Map<String, String>>> current = catalog();
+        return current == null ? null : current.containsKey(databaseName);
+    }
+
+    static Boolean tableExist(String databaseName, String tableName) {
+        Map<String, Map<String, Map<String, String>>> current = catalog();
+        if (current == null) return null;
+        Map<String, Map<String, String>> tables = current.get(databaseName);
+        return tables != null && tables.containsKey(tableName);
+    }
+
+    static String getTableType(String databaseName, String tableName) {
+        Map<String, Map<String, Map<String, String>>> current = catalog();
+        if (current == null) return null;
+        Map<String, Map<String, String>> tables = current.get(databaseName);
+        Map<String, String> columns = tables == null ? null : tables.get(tableName);
+        return columns != null && columns.containsKey("key") ? "key" : "nokey";
+    }
+
+    static List<String> getTables(String databaseName) {
+        Map<String, Map<String, Map<String, String>>> current = catalog();
+        if (current == null) return null;
+        Map<String, Map<String, String>> tables = current.get(databaseName);
+        return tables == null ? new ArrayList<>() : new ArrayList<>(tables.keySet());
+    }
+
+    static void databaseCreated(String databaseName) {
+        Map<String, Map<String, Map<String, String>>> current = schemas;
+        if (current != null) current.computeIfAbsent(databaseName, db -> new ConcurrentHashMap<>());
+    }
+
+    static void databaseDropped(String databaseName) {
+        Map<String, Map<String, Map<String, String>>> current = schemas;
+        if (current != null) current.remove(databaseName);
+    }
+
+    static void tableCreated(String databaseName, String tableName, Map<String, String> columns) {
+        Map<String, Map<String, Map<String, String>>> current = schemas;
+        if (current == null) return;
+        current.computeIfAbsent(databaseName, db -> new ConcurrentHashMap<>()).putIfAbsent(tableName, new LinkedHashMap<>(columns));
+    }
+
+    static void tableDropped(String databaseName, String tableName) {
+        Map<String, Map<String, Map<String, String>>> current = schemas;
+        if (current == null) return;
+        Map<String, Map<String, String>> tables = current.get(databaseName);
+        if (tables != null) tables.remove(tableName);
+    }
+
+    /**
+     * Rilegge le sole colonne di una tabella, ad esempio dopo un {@code ALTER TABLE}.
+     */
+    static void tableAltered(String databaseName, String tableName) {
+        Map<String, Map<String, Map<String, String>>> current = schemas;
+        if (current == null) return;
+        String sql = "SELECT COLUMN_NAME, DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION";
+        Map<String, String> columns = DatabaseAPI.execute("schemaCatalog", databaseName, tableName, null, conn -> {
+            Map<String, String> result = new LinkedHashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, databaseName);
+                ps.setString(2, tableName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        result.put(rs.getString("COLUMN_NAME"), rs.getString("DATA_TYPE").toLowerCase());
+                    }
+                }
+            }
+            return result;
+        });
+        if (columns == null) {
+            clear();
+            return;
+        }
+        Map<String, Map<String, String>> tables = current.computeIfAbsent(databaseName, db -> new ConcurrentHashMap<>());
+        if (columns.isEmpty()) tables.remove(tableName);
+        else tables.put(tableName, columns);
+    }
+
+    private static Map<String, Map<String, Map<String, String>>> catalog() {
+        Map<String, Map<String, Map<String, String>>> current = schemas;
+        if (current != null || !isEnabled()) return current;
+        synchronized (loadLock) {
+            if (schemas == null) schemas = load();
+            return schemas;
+        }
+    }
+
+    private static Map<String, Map<String, Map<String, String>>> load() {
+        return DatabaseAPI.execute("schemaCatalog", "*", null, null, conn -> {
+            Map<String, Map<String, Map<String, String>>> result = new ConcurrentHashMap<>();
+            try (Statement stmt = conn.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT SCHEMA_NAME FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME NOT IN " + SYSTEM_SCHEMAS)) {
+                    while (rs.next()) {
+                        result.put(rs.getString("SCHEMA_NAME"), new ConcurrentHashMap<>());
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME, DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS " +
+                        "WHERE TABLE_SCHEMA NOT IN " + SYSTEM_SCHEMAS + " ORDER BY TABLE_SCHEMA, TABLE_NAME, ORDINAL_POSITION")) {
+                    while (rs.next()) {
+                        result.computeIfAbsent(rs.getString("TABLE_SCHEMA"), db -> new ConcurrentHashMap<>())
+                                .computeIfAbsent(rs.getString("TABLE_NAME"), table -> new LinkedHashMap<>())
+                                .put(rs.getString("COLUMN_NAME"), rs.getString("DATA_TYPE").toLowerCase());
+                    }
+                }
+            }
+            return result;
+        });
+    }
+}
@@ -0,0 +1,219 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Operazioni di {@link DatabaseAPI} eseguite tutte sulla stessa connessione, ottenuta con
+ * {@link DatabaseAPI#transaction}, {@link DatabaseAPI#transactionResult} o {@link DatabaseAPI#session}.
+ * Gli statement vengono preparati una volta per sessione e riusati; le letture vanno sempre sul
+ * database (non sulla cache) e le chiavi scritte vengono invalidate in cache solo a commit avvenuto.
+ * Va usata solo dal thread che la riceve e non deve uscire dalla lambda.
+ */
+public final class Session {
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private final Set<TableHandle> flushed = new HashSet<>();
+    private final Map<TableHandle, Set<String>> writtenKeys = new LinkedHashMap<>();
+    private final Set<TableHandle> writtenTables = new HashSet<>();
+
+    Session(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Connessione della sessione, per query non coperte da questa classe. Non va chiusa né
+     * committata a mano.
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public String getString(String databaseName, String tableName, String key) throws SQLException {
+        return selectValue(read(databaseName, tableName, key).valueColumn.select, key);
+    }
+
+    /**
+     * Come {@link #getString} ma blocca la riga ({@code SELECT ... FOR UPDATE}) fino alla fine della
+     * transazione, così un'altra transazione non può modificarla nel frattempo.
+     */
+    public String getStringForUpdate(String databaseName, String tableName, String key) throws SQLException {
+        return selectValue(read(databaseName, tableName, key).valueColumn.selectForUpdate, key);
+    }
+
+    public String getStringFromColumn(String databaseName, String tableName, String key, String columnName) throws SQLException {
+        return selectValue(read(databaseName, tableName, key).column(columnName).select, key);
+    }
+
+    public <T> T getData(Class<T> type, String databaseName, String tableName, String key) throws SQLException {
+        return getData(Codecs.get(type), databaseName, tableName, key);
+    }
+
+    public <T> T getData(TypeToken<T> type, String databaseName, String tableName, String key) throws SQLException {
+        return getData(Codecs.get(type), databaseName, tableName, key);
+    }
+
+    public <T> T getData(Codec<T> codec, String databaseName, String tableName, String key) throws SQLException {
+        String data = getString(databaseName, tableName, key);
+        if (data == null) return null;
+        return codec.decode(data);
+    }
+
+    public <T> T getDataForUpdate(Codec<T> codec, String databaseName, String tableName, String key) throws SQLException {
+        String data = getStringForUpdate(databaseName, tableName, key);
+        if (data == null) return null;
+        return codec.decode(data);
+    }
+
+    public byte[] getBytes(String databaseName, String tableName, String key) throws SQLException {
+        PreparedStatement ps = prepare(read(databaseName, tableName, key).valueColumn.select);
+        ps.setString(1, key);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? BinaryFormat.unpack(rs.getBytes(1)) : null;
+        }
+    }
+
+    public boolean hasKey(String databaseName, String tableName, String key) throws SQLException {
+        PreparedStatement ps = prepare(read(databaseName, tableName, key).existsByKey);
+        ps.setString(1, key);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    public void saveString(String databaseName, String tableName, String key, String value) throws SQLException {
+        update(written(databaseName, tableName, key).valueColumn.upsert, key, value);
+    }
+
+    public void saveStringInColumn(String databaseName, String tableName, String key, String columnName, String value) throws SQLException {
+        update(written(databaseName, tableName, key).column(columnName).upsert, key, value);
+    }
+
+    public void saveData(String databaseName, String tableName, String key, Object value) throws SQLException {
+        saveString(databaseName, tableName, key, Codecs.encode(value));
+    }
+
+    public <T> void saveData(String databaseName, String tableName, String key, T value, Codec<T> codec) throws SQLException {
+        saveString(databaseName, tableName, key, codec.encode(value));
+    }
+
+    public void saveBytes(String databaseName, String tableName, String key, byte[] value) throws SQLException {
+        PreparedStatement ps = prepare(written(databaseName, tableName, key).valueColumn.upsert);
+        ps.setString(1, key);
+        ps.setBytes(2, value == null ? null : BinaryFormat.pack(value));
+        ps.executeUpdate();
+    }
+
+    public boolean deleteValue(String databaseName, String tableName, String key) throws SQLException {
+        PreparedStatement ps = prepare(written(databaseName, tableName, key).deleteByKey);
+        ps.setString(1, key);
+        return ps.executeUpdate() > 0;
+    }
+
+    public int removeString(String databaseName, String tableName, String value) throws SQLException {
+        TableHandle handle = table(databaseName, tableName);
+        WriteJournal.requireTableReplayed("session", databaseName, tableName);
+        writtenTables.add(handle);
+        boolean hashed = DatabaseAPI.isValueHashed(handle);
+        PreparedStatement ps = prepare(hashed ? handle.deleteByValueHash : handle.deleteByValue);
+        ps.setString(1, value);
+        if (hashed) ps.setString(2, value);
+        return ps.executeUpdate();
+    }
+
+    private String selectValue(String sql, String key) throws SQLException {
+        PreparedStatement ps = prepare(sql);
+        ps.setString(1, key);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private void update(String sql, String key, String value) throws SQLException {
+        PreparedStatement ps = prepare(sql);
+        ps.setString(1, key);
+        ps.setString(2, value);
+        ps.executeUpdate();
+    }
+
+    /**
+     * Alla prima operazione su una tabella svuota la coda write-behind di quella tabella, così la
+     * sessione legge e sovrascrive lo stato più recente.
+     */
+    private TableHandle table(String databaseName, String tableName) {
+        TableHandle handle = DatabaseAPI.table(databaseName, tableName);
+        if (flushed.add(handle)) WriteBehindQueue.flush(databaseName, tableName);
+        return handle;
+    }
+
+    /**
+     * Come {@link #table}, ma fallisce se {@code key} ha scritture ancora nel {@link WriteJournal}: il
+     * database ha un valore vecchio, e un valore calcolato da quello verrebbe poi sovrascritto dalla
+     * riapplicazione.
+     */
+    private TableHandle read(String databaseName, String tableName, String key) throws SQLException {
+        TableHandle handle = table(databaseName, tableName);
+        WriteJournal.requireReplayed("session", databaseName, tableName, key);
+        return handle;
+    }
+
+    private TableHandle written(String databaseName, String tableName, String key) throws SQLException {
+        TableHandle handle = read(databaseName, tableName, key);
+        writtenKeys.computeIfAbsent(handle, h -> new HashSet<>()).add(key);
+        return handle;
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) {
+            ps = connection.prepareStatement(sql);
+            statements.put(sql, ps);
+        }
+        return ps;
+    }
+
+    void invalidateWritten() {
+        writtenKeys.forEach((handle, keys) -> {
+            for (String key : keys) {
+                DatabaseCache.invalidate(handle.getDatabaseName(), handle.getTableName(), key);
+                InvalidationBus.publish(handle.getDatabaseName(), handle.getTableName(), key);
+            }
+            ReplicaRouter.recordWrites(handle.getDatabaseName(), handle.getTableName(), keys);
+        });
+        for (TableHandle handle : writtenTables) {
+            DatabaseCache.invalidateAll(handle.getDatabaseName(), handle.getTableName());
+            ReplicaRouter.recordWrite(handle.getDatabaseName(), handle.getTableName(), null);
+            InvalidationBus.publish(handle.getDatabaseName(), handle.getTableName(), null);
+        }
+    }
+
+    void close() {
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                DatabaseMetrics.logger().warning("Impossibile chiudere uno statement della sessione: " + e.getMessage());
+            }
+        }
+        statements.clear();
+    }
+
+    @FunctionalInterface
+    public interface Task {
+        void run(Session session) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface Function<T> {
+        T apply(Session session) throws SQLException;
+    }
+}
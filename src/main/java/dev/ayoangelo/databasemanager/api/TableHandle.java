@@ -0,0 +1,298 @@
+package dev.ayoangelo.databasemanager.api;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Riferimento a una tabella ottenuto con {@link DatabaseAPI#table(String, String)}. I nomi di database,
+ * tabella e colonne vengono validati una sola volta e i testi SQL di tutte le operazioni vengono
+ * costruiti e internati alla creazione, così le chiamate non concatenano più stringhe e il driver
+ * (o il server, con {@code driver.use-server-prep-stmts}) riceve sempre gli stessi statement.
+ */
+public final class TableHandle {
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_$\\-]{1,64}");
+    private static final Pattern JSON_PATH = Pattern.compile("\\$(\\.[A-Za-z_][A-Za-z0-9_]*|\\[[0-9]{1,9}])+");
+    static final String VALUE_HASH = "value_hash";
+
+    private final String databaseName;
+    private final String tableName;
+    private static final int MAX_QUERIES = 256;
+    private final Map<String, Column> columns = new ConcurrentHashMap<>();
+    private final Map<String, String> queries = new ConcurrentHashMap<>();
+    final String selectKeys;
+    final String selectRow;
+    final String selectValues;
+    final String selectRecentValues;
+    final String selectKeysFirstPage;
+    final String selectKeysAfter;
+    final String selectStringsAfter;
+    final String insertValue;
+    final String deleteByKey;
+    final String deleteByValue;
+    final String existsByKey;
+    final String existsByValue;
+    final String deleteByValueHash;
+    final String existsByValueHash;
+    final String selectKeysByJsonPath;
+    final Column valueColumn;
+    // Colonne lette da INFORMATION_SCHEMA quando il catalogo dello schema non è disponibile
+    volatile Set<String> columnNames;
+
+    TableHandle(String databaseName, String tableName) {
+        this.databaseName = checkIdentifier(databaseName);
+        this.tableName = checkIdentifier(tableName);
+        String table = "`" + databaseName + "`.`" + tableName + "`";
+        this.selectKeys = sql("SELECT `key` FROM " + table);
+        this.selectRow = sql("SELECT * FROM " + table + " WHERE `key` = ?");
+        this.selectValues = sql("SELECT `value` FROM " + table);
+        this.selectRecentValues = sql("SELECT `value` FROM " + table + " WHERE `created` >= NOW() - INTERVAL ? SECOND ORDER BY `id`");
+        this.selectKeysFirstPage = sql("SELECT `key` FROM " + table + " ORDER BY `key` LIMIT ?");
+        this.selectKeysAfter = sql("SELECT `key` FROM " + table + " WHERE `key` > ? ORDER BY `key` LIMIT ?");
+        this.selectStringsAfter = sql("SELECT `id`, `value` FROM " + table + " WHERE `id` > ? ORDER BY `id` LIMIT ?");
+        this.insertValue = sql("INSERT INTO " + table + " (`value`) VALUES (?)");
+        this.deleteByKey = sql("DELETE FROM " + table + " WHERE `key` = ?");
+        this.deleteByValue = sql("DELETE FROM " + table + " WHERE `value` = ?");
+        this.existsByKey = sql("SELECT 1 FROM " + table + " WHERE `key` = ? LIMIT 1");
+        this.existsByValue = sql("SELECT 1 FROM " + table + " WHERE `value` = ? LIMIT 1");
+        // Il confronto su value dopo l'hash esclude le collisioni di MD5
+        this.deleteByValueHash = sql("DELETE FROM " + table + " WHERE `" + VALUE_HASH + "` = UNHEX(MD5(?)) AND `value` = ?");
+        this.existsByValueHash = sql("SELECT 1 FROM " + table + " WHERE `" + VALUE_HASH + "` = UNHEX(MD5(?)) AND `value` = ? LIMIT 1");
+        this.selectKeysByJsonPath = sql("SELECT `key` FROM " + table + " WHERE JSON_VALID(`value`) AND JSON_UNQUOTE(JSON_EXTRACT(`value`, ?)) = ?");
+        this.valueColumn = column("value");
+    }
+
+    static String checkIdentifier(String name) {
+        if (name == null || !IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("Nome non valido per database, tabella o colonna: " + name);
+        }
+        return name;
+    }
+
+    static String checkJsonPath(String path) {
+        if (path == null || !JSON_PATH.matcher(path).matches()) {
+            throw new IllegalArgumentException("Percorso JSON non valido (es. $.stats.kills o $.items[0]): " + path);
+        }
+        return path;
+    }
+
+    /**
+     * Nome della colonna generata che indicizza {@code path}, es. {@code $.stats.kills} -> {@code jp_stats__kills}.
+     */
+    static String jsonColumnName(String path) {
+        String name = "jp_" + checkJsonPath(path).substring(1).replace(".", "__").replace("[", "_").replace("]", "").replaceFirst("^__", "");
+        if (name.length() <= 64) return name;
+        return name.substring(0, 55) + "_" + String.format("%08x", path.hashCode());
+    }
+
+    private static String sql(String text) {
+        return text.intern();
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Statement precostruiti per una colonna; il nome viene validato alla prima richiesta.
+     */
+    Column column(String columnName) {
+        Column column = columns.get(columnName);
+        if (column == null) column = columns.computeIfAbsent(checkIdentifier(columnName), Column::new);
+        return column;
+    }
+
+    /**
+     * Testo SQL di una {@link Query} con la forma {@code shape}, costruito alla prima richiesta. Oltre
+     * {@code MAX_QUERIES} forme diverse (query generate dinamicamente) il testo non viene più memorizzato.
+     */
+    String query(String shape, Supplier<String> builder) {
+        String sql = queries.get(shape);
+        if (sql != null) return sql;
+        if (queries.size() >= MAX_QUERIES) return builder.get();
+        return queries.computeIfAbsent(shape, s -> sql(builder.get()));
+    }
+
+    public Query select() {
+        return new Query(this);
+    }
+
+    public String getString(String key) {
+        return DatabaseAPI.getString(databaseName, tableName, key);
+    }
+
+    public String getStringFromColumn(String key, String columnName) {
+        return DatabaseAPI.getStringFromColumn(databaseName, tableName, key, columnName);
+    }
+
+    public Map<String, String> getStrings(Collection<String> keys) {
+        return DatabaseAPI.getStrings(databaseName, tableName, keys);
+    }
+
+    public <T> T getData(Class<T> type, String key) {
+        return DatabaseAPI.getData(type, databaseName, tableName, key);
+    }
+
+    public <T> T getData(TypeToken<T> type, String key) {
+        return DatabaseAPI.getData(type, databaseName, tableName, key);
+    }
+
+    public <T> T getData(Codec<T> codec, String key) {
+        return DatabaseAPI.getData(codec, databaseName, tableName, key);
+    }
+
+    public byte[] getBytes(String key) {
+        return DatabaseAPI.getBytes(databaseName, tableName, key);
+    }
+
+    public boolean hasKey(String key) {
+        return DatabaseAPI.hasKey(databaseName, tableName, key);
+    }
+
+    public List<String> getTableKeys() {
+        return DatabaseAPI.getTableKeys(databaseName, tableName);
+    }
+
+    public void saveString(String key, String value) {
+        DatabaseAPI.saveString(databaseName, tableName, key, value);
+    }
+
+    public void saveStringInColumn(String key, String columnName, String value) {
+        DatabaseAPI.saveStringInColumn(databaseName, tableName, key, columnName, value);
+    }
+
+    public void saveData(String key, Object value) {
+        DatabaseAPI.saveData(databaseName, tableName, key, value);
+    }
+
+    public <T> void saveData(String key, T value, Codec<T> codec) {
+        DatabaseAPI.saveData(databaseName, tableName, key, value, codec);
+    }
+
+    public void saveBytes(String key, byte[] value) {
+        DatabaseAPI.saveBytes(databaseName, tableName, key, value);
+    }
+
+    public void deleteValue(String key) {
+        DatabaseAPI.deleteValue(databaseName, tableName, key);
+    }
+
+    public Long increment(String key, String columnName, long delta) {
+        return DatabaseAPI.increment(databaseName, tableName, key, columnName, delta);
+    }
+
+    public boolean compareAndSet(String key, String columnName, String expected, String value) {
+        return DatabaseAPI.compareAndSet(databaseName, tableName, key, columnName, expected, value);
+    }
+
+    public boolean updateJson(String key, String path, Object value) {
+        return DatabaseAPI.updateJson(databaseName, tableName, key, path, value);
+    }
+
+    public <T> T getJson(Class<T> type, String key, String path) {
+        return DatabaseAPI.getJson(type, databaseName, tableName, key, path);
+    }
+
+    @Override
+    public String toString() {
+        return databaseName + "." + tableName;
+    }
+
+    final class Column {
+        final String name;
+        final String select;
+        final String selectForUpdate;
+        final String upsert;
+        final String increment;
+        final String incrementDecimal;
+        final String compareAndSet;
+        final String setIfNull;
+        final String insertIfAbsent;
+        final String jsonExtract;
+        final String jsonRemove;
+        final String jsonIncrement;
+        final String jsonIncrementDecimal;
+        final String selectKeysWhere;
+        private final String table;
+        private final String[] selectIn = new String[DatabaseAPI.IN_LIST_PLACEHOLDERS.length];
+        private final Map<Integer, String> jsonSet = new ConcurrentHashMap<>();
+        private final Map<String, String[]> versioned = new ConcurrentHashMap<>();
+
+        private Column(String name) {
+            String table = "`" + databaseName + "`.`" + tableName + "`";
+            String column = "`" + name + "`";
+            this.table = table;
+            this.name = name;
+            this.select = sql("SELECT " + column + " FROM " + table + " WHERE `key` = ?");
+            this.selectForUpdate = sql("SELECT " + column + " FROM " + table + " WHERE `key` = ? FOR UPDATE");
+            this.upsert = sql("INSERT INTO " + table + " (`key`, " + column + ") VALUES (?, ?) " +
+                    "ON DUPLICATE KEY UPDATE " + column + " = VALUES(" + column + ")");
+            // Le colonne create da DatabaseAPI sono TEXT: il CAST evita che la somma passi per un DOUBLE
+            this.increment = sql("INSERT INTO " + table + " (`key`, " + column + ") VALUES (?, ?) " +
+                    "ON DUPLICATE KEY UPDATE " + column + " = CAST(COALESCE(" + column + ", 0) AS SIGNED) + ?");
+            this.incrementDecimal = sql("INSERT INTO " + table + " (`key`, " + column + ") VALUES (?, ?) " +
+                    "ON DUPLICATE KEY UPDATE " + column + " = COALESCE(" + column + ", 0) + ?");
+            this.compareAndSet = sql("UPDATE " + table + " SET " + column + " = ? WHERE `key` = ? AND " + column + " = ?");
+            this.setIfNull = sql("UPDATE " + table + " SET " + column + " = ? WHERE `key` = ? AND " + column + " IS NULL");
+            this.insertIfAbsent = sql("INSERT IGNORE INTO " + table + " (`key`, " + column + ") VALUES (?, ?)");
+            this.jsonExtract = sql("SELECT JSON_EXTRACT(" + column + ", ?) FROM " + table + " WHERE `key` = ?");
+            this.jsonRemove = sql("UPDATE " + table + " SET " + column + " = JSON_REMOVE(" + column + ", ?) WHERE `key` = ?");
+            this.jsonIncrement = sql("UPDATE " + table + " SET " + column + " = JSON_SET(COALESCE(" + column + ", '{}'), ?, " +
+                    "CAST(COALESCE(JSON_EXTRACT(" + column + ", ?), 0) AS SIGNED) + ?) WHERE `key` = ?");
+            this.jsonIncrementDecimal = sql("UPDATE " + table + " SET " + column + " = JSON_SET(COALESCE(" + column + ", '{}'), ?, " +
+                    "COALESCE(JSON_EXTRACT(" + column + ", ?), 0) + ?) WHERE `key` = ?");
+            this.selectKeysWhere = sql("SELECT `key` FROM " + table + " WHERE " + column + " = ?");
+            for (int size : DatabaseAPI.IN_LIST_SIZES) {
+                selectIn[size] = sql("SELECT `key`, " + column + " FROM " + table + " WHERE `key` IN (" + DatabaseAPI.IN_LIST_PLACEHOLDERS[size] + ")");
+            }
+        }
+
+        /**
+         * {@code UPDATE ... SET col = JSON_SET(col, ?, CAST(? AS JSON), ...) WHERE key = ?} con {@code paths} coppie
+         * percorso/valore.
+         */
+        String jsonSet(int paths) {
+            String cached = jsonSet.get(paths);
+            if (cached != null) return cached;
+            StringBuilder sql = new StringBuilder("UPDATE " + table + " SET `" + name + "` = JSON_SET(COALESCE(`" + name + "`, '{}')");
+            for (int i = 0; i < paths; i++) {
+                sql.append(", ?, CAST(? AS JSON)");
+            }
+            sql.append(") WHERE `key` = ?");
+            return jsonSet.computeIfAbsent(paths, p -> sql(sql.toString()));
+        }
+
+        /**
+         * Update e insert condizionati alla colonna di versione: {@code [0]} aggiorna solo se la versione è
+         * quella attesa e la incrementa, {@code [1]} inserisce la riga con versione 1 se non esiste.
+         */
+        String[] versioned(Column version) {
+            String[] cached = versioned.get(version.name);
+            if (cached != null) return cached;
+            String column = "`" + name + "`";
+            String versionColumn = "`" + version.name + "`";
+            return versioned.computeIfAbsent(version.name, v -> new String[]{
+                    sql("UPDATE " + table + " SET " + column + " = ?, " + versionColumn + " = CAST(COALESCE(" + versionColumn + ", 0) AS SIGNED) + 1 " +
+                            "WHERE `key` = ? AND CAST(COALESCE(" + versionColumn + ", 0) AS SIGNED) = ?"),
+                    sql("INSERT IGNORE INTO " + table + " (`key`, " + column + ", " + versionColumn + ") VALUES (?, ?, 1)")
+            });
+        }
+
+        /**
+         * {@code size} deve essere una delle dimensioni fisse restituite da {@code inListSize}.
+         */
+        String selectIn(int size) {
+            return selectIn[size];
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package dev.ayoangelo.databasemanager.api;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor di {@link AsyncDatabaseAPI} su thread virtuali (JDK 21+), attivato da {@code async.virtual-threads}.
+ * Il plugin è compilato per Java 16, quindi le API dei thread virtuali vengono cercate per reflection;
+ * su JVM più vecchie {@link #create} restituisce {@code null} e resta l'executor a thread di piattaforma.
+ * Ogni task ha il suo thread virtuale, ma al più {@code pool-size} eseguono insieme: gli altri attendono
+ * il semaforo senza occupare un thread del sistema operativo né una connessione del pool. Il limite serve
+ * anche perché il driver MySQL blocca il carrier durante l'I/O ({@code synchronized}).
+ */
+final class VirtualThreadExecutor extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final ResizableSemaphore permits;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final int queueSize;
+
+    private VirtualThreadExecutor(ExecutorService delegate, int concurrency, int queueSize) {
+        this.delegate = delegate;
+        this.permits = new ResizableSemaphore(concurrency);
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * {@code null} se la JVM non supporta i thread virtuali.
+     */
+    static VirtualThreadExecutor create(int concurrency, int queueSize) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "DatabaseManager-Virtual-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method executor = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return new VirtualThreadExecutor((ExecutorService) executor.invoke(null, factory), concurrency, queueSize);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Task in attesa di un permesso, l'equivalente della coda di un {@code ThreadPoolExecutor}.
+     */
+    int queued() {
+        return permits.getQueueLength();
+    }
+
+    void setConcurrency(int concurrency) {
+        permits.resize(concurrency);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        // Come la coda limitata dell'executor di piattaforma: oltre queue-size task in attesa si rifiuta
+        if (pending.incrementAndGet() > permits.size() + queueSize) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("Troppi task in attesa");
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    // shutdownNow: come i task ancora in coda di un ThreadPoolExecutor, non viene eseguito
+                    pending.decrementAndGet();
+                    return;
+                }
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                    pending.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private static final class ResizableSemaphore extends Semaphore {
+        private int size;
+
+        private ResizableSemaphore(int size) {
+            super(size);
+            this.size = size;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized void resize(int size) {
+            if (size > this.size) {
+                release(size - this.size);
+            } else if (size < this.size) {
+                reducePermits(this.size - size);
+            }
+            this.size = size;
+        }
+    }
+}
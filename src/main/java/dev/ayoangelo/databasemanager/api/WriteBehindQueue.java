@@ -0,0 +1,300 @@
+package dev.ayoangelo.databasemanager.api;
+
+import dev.ayoangelo.databasemanager.utils.Config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coda write-behind per gli upsert di {@link DatabaseAPI}. Le scritture vengono raggruppate per
+ * {@code database.tabella.colonna}, le scritture ripetute sulla stessa chiave si sovrascrivono
+ * (vince l'ultima) e vengono inviate come batch JDBC al raggiungimento di {@code batch-size}
+ * oppure ogni {@code flush-interval} millisecondi.
+ */
+public class WriteBehindQueue {
+    private static final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService flusher;
+    private static volatile boolean closed;
+
+    public static boolean isEnabled() {
+        return !closed && Config.getData(Boolean.class, "write-behind.enabled", false);
+    }
+
+    private static int getBatchSize() {
+        return Math.max(1, Config.getData(Integer.class, "write-behind.batch-size", 500));
+    }
+
+    private static synchronized ScheduledExecutorService getFlusher() {
+        if (flusher == null) {
+            long interval = Math.max(50, Config.getData(Integer.class, "write-behind.flush-interval", 1000));
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "DatabaseManager-WriteBehind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(WriteBehindQueue::flushAll, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return flusher;
+    }
+
+    /**
+     * Accoda un upsert. Restituisce {@code false} se la modalità write-behind è disattivata o la coda
+     * è già stata chiusa: in quel caso il chiamante deve scrivere direttamente.
+     */
+    public static boolean enqueue(String databaseName, String tableName, String columnName, String key, String value) {
+        if (!isEnabled()) return false;
+        Batch batch = batches.computeIfAbsent(id(databaseName, tableName, columnName), id -> new Batch(databaseName, tableName, columnName));
+        if (batch.put(key, value) >= getBatchSize()) {
+            getFlusher().execute(batch::flush);
+        } else {
+            getFlusher();
+        }
+        return true;
+    }
+
+    public static Pending lookup(String databaseName, String tableName, String columnName, String key) {
+        if (batches.isEmpty()) return null;
+        Batch batch = batches.get(id(databaseName, tableName, columnName));
+        return batch == null ? null : batch.get(key);
+    }
+
+    public static boolean isPending(String databaseName, String tableName, String key) {
+        if (batches.isEmpty()) return false;
+        for (Batch batch : batches.values()) {
+            if (batch.isFor(databaseName, tableName) && batch.get(key) != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Scarta le scritture in coda per una chiave e attende l'eventuale flush in corso, così che
+     * una DELETE successiva non venga sovrascritta da un batch ancora in volo.
+     */
+    public static void discard(String databaseName, String tableName, String key) {
+        if (batches.isEmpty()) return;
+        for (Batch batch : batches.values()) {
+            if (batch.isFor(databaseName, tableName)) batch.discard(key);
+        }
+    }
+
+    public static void flush(String databaseName, String tableName) {
+        if (batches.isEmpty()) return;
+        for (Batch batch : batches.values()) {
+            if (batch.isFor(databaseName, tableName)) batch.flush();
+        }
+    }
+
+    public static void flushAll() {
+        for (Batch batch : batches.values()) {
+            batch.flush();
+        }
+    }
+
+    static void open() {
+        closed = false;
+    }
+
+    public static void shutdown() {
+        closed = true;
+        synchronized (WriteBehindQueue.class) {
+            if (flusher != null) {
+                flusher.shutdown();
+                try {
+                    flusher.awaitTermination(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                flusher = null;
+            }
+        }
+        flushAll();
+    }
+
+    private static String id(String databaseName, String tableName, String columnName) {
+        return databaseName + "." + tableName + "." + columnName;
+    }
+
+    public static final class Pending {
+        private final String value;
+
+        Pending(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    private static final class Batch {
+        private final String databaseName;
+        private final String tableName;
+        private final String columnName;
+        private final String sql;
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private Map<String, String> pending = new LinkedHashMap<>();
+        private Map<String, String> flushing = Map.of();
+
+        private Batch(String databaseName, String tableName, String columnName) {
+            this.databaseName = databaseName;
+            this.tableName = tableName;
+            this.columnName = columnName;
+            this.sql = DatabaseAPI.table(databaseName, tableName).column(columnName).upsert;
+        }
+
+        private boolean isFor(String databaseName, String tableName) {
+            return this.databaseName.equals(databaseName) && this.tableName.equals(tableName);
+        }
+
+        private synchronized int put(String key, String value) {
+            pending.put(key, value);
+            return pending.size();
+        }
+
+        private synchronized Pending get(String key) {
+            if (pending.containsKey(key)) return new Pending(pending.get(key));
+            if (flushing.containsKey(key)) return new Pending(flushing.get(key));
+            return null;
+        }
+
+        // Prima si attende il flush in corso: se fallisce rimette la chiave in coda, e va tolta anche quella
+        private void discard(String key) {
+            flushLock.lock();
+            try {
+                synchronized (this) {
+                    pending.remove(key);
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        private void flush() {
+            flushLock.lock();
+            try {
+                Map<String, String> entries;
+                synchronized (this) {
+                    if (pending.isEmpty()) return;
+                    entries = pending;
+                    flushing = entries;
+                    pending = new LinkedHashMap<>();
+                }
+                // Le chiavi con scritture ancora nel journal vanno in coda a quelle, non direttamente sul database
+                Map<String, String> direct = WriteJournal.divert(databaseName, tableName, columnName, entries);
+                long start = System.nanoTime();
+                boolean failed = false;
+                try {
+                    if (!direct.isEmpty()) write(direct);
+                    written(direct.keySet());
+                } catch (SQLException e) {
+                    failed = true;
+                    DatabaseAPI.fail("writeBehindFlush", databaseName, tableName, e);
+                    // Un errore permanente (valore troppo lungo, vincolo violato) annulla tutto il batch: riprovando
+                    // riga per riga vengono salvate le altre, invece di bloccare la coda a ogni flush
+                    Map<String, String> unsaved = DatabaseException.of("writeBehindFlush", e).isTransient() ? direct : writeEach(direct);
+                    if (!unsaved.isEmpty()) {
+                        Map<String, String> journaled = unsaved;
+                        unsaved = new LinkedHashMap<>();
+                        for (Map.Entry<String, String> entry : journaled.entrySet()) {
+                            if (!WriteJournal.appendUpsert(databaseName, tableName, columnName, entry.getKey(), entry.getValue())) unsaved.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    if (!closed && !unsaved.isEmpty()) {
+                        synchronized (this) {
+                            unsaved.forEach(pending::putIfAbsent);
+                        }
+                    }
+                } finally {
+                    synchronized (this) {
+                        flushing = Map.of();
+                    }
+                    DatabaseMetrics.record("writeBehindFlush", databaseName, tableName, System.nanoTime() - start, entries.size(), failed);
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        /**
+         * Scrive le righe una alla volta scartando quelle rifiutate dal database. Restituisce le righe non
+         * scritte per un errore temporaneo, da riprovare.
+         */
+        private Map<String, String> writeEach(Map<String, String> entries) {
+            Map<String, String> unsaved = new LinkedHashMap<>();
+            Set<String> saved = new LinkedHashSet<>();
+            try (Connection conn = DatabaseAPI.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    if (!unsaved.isEmpty()) {
+                        unsaved.put(entry.getKey(), entry.getValue());
+                        continue;
+                    }
+                    try {
+                        ps.setString(1, entry.getKey());
+                        ps.setString(2, entry.getValue());
+                        ps.executeUpdate();
+                        saved.add(entry.getKey());
+                    } catch (SQLException e) {
+                        if (DatabaseException.of("writeBehindFlush", e).isTransient()) {
+                            unsaved.put(entry.getKey(), entry.getValue());
+                        } else {
+                            DatabaseMetrics.logger().warning("Scrittura in coda di " + entry.getKey() + " su " + databaseName + "." + tableName + "." + columnName + " scartata: " + e.getMessage());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (DatabaseException.of("writeBehindFlush", e).isTransient()) {
+                    entries.forEach((key, value) -> {
+                        if (!saved.contains(key)) unsaved.putIfAbsent(key, value);
+                    });
+                } else {
+                    // Statement rifiutato (colonna o tabella eliminata): nessuna riga potrà essere scritta
+                    DatabaseMetrics.logger().warning((entries.size() - saved.size()) + " scritture in coda su " + databaseName + "." + tableName + "." + columnName + " scartate: " + e.getMessage());
+                }
+            }
+            written(saved);
+            return unsaved;
+        }
+
+        private void written(Collection<String> keys) {
+            ReplicaRouter.recordWrites(databaseName, tableName, keys);
+            for (String key : keys) {
+                InvalidationBus.publish(databaseName, tableName, key);
+            }
+        }
+
+        private void write(Map<String, String> entries) throws SQLException {
+            int batchSize = getBatchSize();
+            try (Connection conn = DatabaseAPI.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+                boolean autoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+                try {
+                    int count = 0;
+                    for (Map.Entry<String, String> entry : entries.entrySet()) {
+                        ps.setString(1, entry.getKey());
+                        ps.setString(2, entry.getValue());
+                        ps.addBatch();
+                        if (++count % batchSize == 0) ps.executeBatch();
+                    }
+                    if (count % batchSize != 0) ps.executeBatch();
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(autoCommit);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,664 @@
+package dev.ayoangelo.databasemanager.api;
+
+import dev.ayoangelo.databasemanager.utils.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Journal locale delle scritture che non sono arrivate a MySQL. Quando un upsert, una delete o un
+ * inserimento senza chiave di {@link DatabaseAPI} fallisce per un errore temporaneo (database irraggiungibile, timeout, circuit breaker
+ * aperto) la scrittura viene aggiunta a un file di segmento mappato in memoria in
+ * {@code plugins/DatabaseManager/journal} e riapplicata in background, in ordine e a batch, appena il
+ * database torna raggiungibile. Nel frattempo le letture delle chiavi in sospeso restituiscono i valori
+ * del journal, e le nuove scritture su quelle chiavi passano anch'esse dal journal, così che la
+ * riapplicazione non sovrascriva un valore più recente. Le operazioni che il journal non può coprire
+ * (aggiornamenti atomici, sessioni, ricerche e rimozioni per valore, scansioni) falliscono con
+ * {@link DatabaseException.Kind#UNAVAILABLE} finché la chiave o la tabella ha scritture in sospeso.
+ * Riapplicare due volte lo stesso upsert o la stessa delete (dopo un crash prima del checkpoint) non cambia
+ * il risultato; un inserimento senza chiave invece verrebbe duplicato.
+ * <p>
+ * Segmento: intestazione di 16 byte (magic, versione, offset già riapplicato) seguita dai record
+ * {@code [lunghezza][crc32][dati]}; un record incompleto o con CRC errato chiude il segmento.
+ */
+public class WriteJournal {
+    private static final int MAGIC = 0x444D4A31; // "DMJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int APPLIED_OFFSET = 8;
+    private static final byte UPSERT = 1;
+    private static final byte DELETE = 2;
+    private static final byte INSERT = 3;
+
+    private static final Object lock = new Object();
+    private static final AtomicBoolean replayRequested = new AtomicBoolean();
+    private static final Map<String, Row> overlay = new HashMap<>();
+    private static final Map<String, Integer> pendingByTable = new HashMap<>();
+    private static final Deque<Segment> segments = new ArrayDeque<>();
+    private static volatile int pending;
+    private static volatile boolean open;
+    private static Path directory;
+    private static long nextSequence;
+    private static long nextSegment;
+    private static volatile ScheduledExecutorService replayer;
+
+    public static boolean isEnabled() {
+        return Config.getData(Boolean.class, "journal.enabled", true);
+    }
+
+    /**
+     * Scritture nel journal non ancora riapplicate sul database.
+     */
+    public static int getPendingCount() {
+        return pending;
+    }
+
+    private static int segmentSize() {
+        return Math.max(1, Config.getData(Integer.class, "journal.segment-size-mb", 16)) << 20;
+    }
+
+    /**
+     * Apre i segmenti rimasti dall'ultima esecuzione, ricostruisce le scritture in sospeso e avvia la
+     * riapplicazione. Lo chiama {@code DatabaseManager.onEnable()}.
+     */
+    public static void open(File dataFolder) {
+        if (!isEnabled()) return;
+        synchronized (lock) {
+            if (open) return;
+            directory = dataFolder.toPath().resolve("journal");
+            try {
+                Files.createDirectories(directory);
+                List<Path> files;
+                try (Stream<Path> list = Files.list(directory)) {
+                    files = list.filter(path -> path.getFileName().toString().matches("segment-\\d+\\.log")).sorted().collect(java.util.stream.Collectors.toList());
+                }
+                for (Path file : files) {
+                    Segment segment = Segment.open(file);
+                    int position = segment.applied;
+                    for (Record record = segment.read(position, segment.capacity); record != null; record = segment.read(position, segment.capacity)) {
+                        apply(record);
+                        nextSequence = Math.max(nextSequence, record.sequence + 1);
+                        position = record.next;
+                    }
+                    segment.writePosition = position;
+                    nextSegment = Math.max(nextSegment, segment.index + 1);
+                    if (position == segment.applied) segment.delete();
+                    else segments.addLast(segment);
+                }
+            } catch (IOException | RuntimeException e) {
+                DatabaseMetrics.logger().warning("Impossibile aprire il journal in " + directory + ": " + e.getMessage());
+                closeSegments();
+                overlay.clear();
+                pendingByTable.clear();
+                pending = 0;
+                return;
+            }
+            open = true;
+        }
+        if (pending > 0) DatabaseMetrics.logger().info("Journal: " + pending + " scritture dalla sessione precedente da riapplicare");
+        long interval = Math.max(100, Config.getData(Integer.class, "journal.replay-interval-ms", 1000));
+        replayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DatabaseManager-Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayer.scheduleWithFixedDelay(WriteJournal::replay, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ferma la riapplicazione dopo un ultimo tentativo e chiude i segmenti; le scritture ancora in
+     * sospeso restano su disco per il prossimo avvio. Va chiamato prima di chiudere il pool.
+     */
+    public static void close() {
+        if (!open) return;
+        replayer.shutdown();
+        try {
+            replayer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        replay();
+        synchronized (lock) {
+            open = false;
+            if (pending > 0) DatabaseMetrics.logger().warning("Journal: " + pending + " scritture non riapplicate, verranno riprovate al prossimo avvio");
+            closeSegments();
+            overlay.clear();
+            pendingByTable.clear();
+            pending = 0;
+        }
+    }
+
+    static boolean appendUpsert(String databaseName, String tableName, String columnName, String key, String value) {
+        return append(UPSERT, databaseName, tableName, columnName, key, value, false);
+    }
+
+    static boolean appendDelete(String databaseName, String tableName, String key) {
+        return append(DELETE, databaseName, tableName, "", key, null, false);
+    }
+
+    /**
+     * Inserimento senza chiave ({@code saveString(database, tabella, valore)}). Alla riapplicazione la riga
+     * riceve un nuovo id e, nelle tabelle partizionate, la data di riapplicazione come {@code created}.
+     */
+    static boolean appendInsert(String databaseName, String tableName, String value) {
+        return append(INSERT, databaseName, tableName, "value", "", value, false);
+    }
+
+    /**
+     * Aggiunge l'upsert al journal solo se la chiave ha già scritture in sospeso, per non scavalcarle.
+     */
+    static boolean appendUpsertIfPending(String databaseName, String tableName, String columnName, String key, String value) {
+        return pending > 0 && append(UPSERT, databaseName, tableName, columnName, key, value, true);
+    }
+
+    static boolean appendDeleteIfPending(String databaseName, String tableName, String key) {
+        return pending > 0 && append(DELETE, databaseName, tableName, "", key, null, true);
+    }
+
+    /**
+     * Sposta nel journal le scritture di {@code entries} su chiavi già in sospeso e restituisce le altre.
+     */
+    static Map<String, String> divert(String databaseName, String tableName, String columnName, Map<String, String> entries) {
+        if (pending == 0) return entries;
+        Map<String, String> remaining = new LinkedHashMap<>();
+        entries.forEach((key, value) -> {
+            if (!appendUpsertIfPending(databaseName, tableName, columnName, key, value)) remaining.put(key, value);
+        });
+        return remaining;
+    }
+
+    /**
+     * Lancia un errore {@link DatabaseException.Kind#UNAVAILABLE} se {@code key} ha scritture nel journal non
+     * ancora riapplicate. Le operazioni che non passano dal journal (aggiornamenti atomici, sessioni, colonne
+     * binarie) lo chiamano prima di usare la chiave: una riapplicazione successiva sovrascriverebbe il loro
+     * risultato con un valore più vecchio. La riapplicazione resta al suo thread, che viene anticipato,
+     * invece di bloccare il chiamante (spesso il main thread) per tutto il journal.
+     */
+    static void requireReplayed(String operation, String databaseName, String tableName, String key) throws DatabaseException {
+        if (!isPending(databaseName, tableName, key)) return;
+        requestReplay();
+        throw new DatabaseException(DatabaseException.Kind.UNAVAILABLE, operation, "La chiave " + key + " di " + databaseName + "." + tableName + " ha scritture non ancora riapplicate dal journal");
+    }
+
+    /**
+     * Come {@link #requireReplayed} per le operazioni su tutta la tabella (ricerche e rimozioni per valore,
+     * query, scansioni): il database non contiene ancora le scritture nel journal, e una rimozione verrebbe
+     * annullata dalla riapplicazione successiva.
+     */
+    static void requireTableReplayed(String operation, String databaseName, String tableName) throws DatabaseException {
+        if (pending == 0) return;
+        synchronized (lock) {
+            if (!pendingByTable.containsKey(tableId(databaseName, tableName))) return;
+        }
+        requestReplay();
+        throw new DatabaseException(DatabaseException.Kind.UNAVAILABLE, operation, "La tabella " + databaseName + "." + tableName + " ha scritture non ancora riapplicate dal journal");
+    }
+
+    private static void requestReplay() {
+        ScheduledExecutorService current = replayer;
+        if (current == null || !replayRequested.compareAndSet(false, true)) return;
+        try {
+            current.execute(() -> {
+                replayRequested.set(false);
+                replay();
+            });
+        } catch (RejectedExecutionException e) {
+            replayRequested.set(false);
+        }
+    }
+
+    static boolean isPending(String databaseName, String tableName, String key) {
+        if (pending == 0) return false;
+        synchronized (lock) {
+            return overlay.containsKey(id(databaseName, tableName, key));
+        }
+    }
+
+    /**
+     * Valore in sospeso di una colonna, {@code null} se va letta dal database.
+     */
+    static WriteBehindQueue.Pending lookup(String databaseName, String tableName, String columnName, String key) {
+        if (pending == 0) return null;
+        synchronized (lock) {
+            Row row = overlay.get(id(databaseName, tableName, key));
+            if (row == null) return null;
+            Value value = row.columns.get(columnName);
+            if (value != null) return new WriteBehindQueue.Pending(value.value);
+            return row.deleted >= 0 ? new WriteBehindQueue.Pending(null) : null;
+        }
+    }
+
+    /**
+     * Esistenza della riga secondo il journal, {@code null} se va chiesta al database.
+     */
+    static Boolean exists(String databaseName, String tableName, String key) {
+        if (pending == 0) return null;
+        synchronized (lock) {
+            Row row = overlay.get(id(databaseName, tableName, key));
+            if (row == null) return null;
+            if (!row.columns.isEmpty()) return true;
+            return row.deleted >= 0 ? false : null;
+        }
+    }
+
+    /**
+     * Sovrappone a {@code values}, letti dal database, le scritture in sospeso della riga.
+     */
+    static void applyTo(String databaseName, String tableName, String key, Map<String, String> values) {
+        if (pending == 0) return;
+        synchronized (lock) {
+            Row row = overlay.get(id(databaseName, tableName, key));
+            if (row == null) return;
+            if (row.deleted >= 0) values.clear();
+            row.columns.forEach((columnName, value) -> values.put(columnName, value.value));
+        }
+    }
+
+    private static boolean append(byte op, String databaseName, String tableName, String columnName, String key, String value, boolean onlyIfPending) {
+        if (!open) return false;
+        boolean first;
+        Segment segment;
+        synchronized (lock) {
+            if (!open) return false;
+            if (onlyIfPending && !overlay.containsKey(id(databaseName, tableName, key))) return false;
+            Record record = new Record(op, nextSequence, databaseName, tableName, columnName, key, value);
+            byte[] body = record.encode();
+            try {
+                segment = writable(body.length + 8);
+            } catch (IOException e) {
+                DatabaseMetrics.logger().warning("Impossibile scrivere nel journal: " + e.getMessage());
+                return false;
+            }
+            nextSequence++;
+            segment.write(body);
+            apply(record);
+            first = pending == 1;
+        }
+        if (Config.getData(Boolean.class, "journal.sync", false)) segment.buffer.force();
+        if (first) DatabaseMetrics.logger().warning("Scritture su MySQL non riuscite: vengono salvate nel journal locale e riapplicate quando il database torna raggiungibile");
+        return true;
+    }
+
+    private static Segment writable(int size) throws IOException {
+        Segment last = segments.peekLast();
+        if (last != null && last.writePosition + size <= last.capacity) return last;
+        if (last != null) last.buffer.force();
+        Path file = directory.resolve(String.format("segment-%016d.log", nextSegment));
+        Segment segment = Segment.create(file, nextSegment, Math.max(segmentSize(), HEADER_SIZE + size));
+        nextSegment++;
+        segments.addLast(segment);
+        return segment;
+    }
+
+    // Aggiorna l'overlay con una scrittura appena aggiunta o ritrovata all'apertura
+    private static void apply(Record record) {
+        if (record.op != INSERT) {
+            Row row = overlay.computeIfAbsent(id(record.databaseName, record.tableName, record.key), id -> new Row());
+            if (record.op == UPSERT) {
+                row.columns.put(record.columnName, new Value(record.value, record.sequence));
+            } else {
+                row.columns.clear();
+                row.deleted = record.sequence;
+            }
+        }
+        pendingByTable.merge(tableId(record.databaseName, record.tableName), 1, Integer::sum);
+        pending++;
+    }
+
+    // Toglie dall'overlay una scrittura riapplicata, se nel frattempo non ne è arrivata una più recente
+    private static void applied(Record record) {
+        String id = id(record.databaseName, record.tableName, record.key);
+        Row row = record.op == INSERT ? null : overlay.get(id);
+        if (row != null) {
+            if (record.op == UPSERT) {
+                Value value = row.columns.get(record.columnName);
+                if (value != null && value.sequence == record.sequence) row.columns.remove(record.columnName);
+            } else if (row.deleted == record.sequence) {
+                row.deleted = -1;
+            }
+            if (row.columns.isEmpty() && row.deleted < 0) overlay.remove(id);
+        }
+        pendingByTable.computeIfPresent(tableId(record.databaseName, record.tableName), (table, count) -> count > 1 ? count - 1 : null);
+        pending--;
+    }
+
+    /**
+     * Riapplica i record in ordine. I record consecutivi sulla stessa tabella, colonna e operazione
+     * formano un batch eseguito in una transazione; dopo il commit l'offset riapplicato viene salvato
+     * nell'intestazione del segmento. Al primo errore temporaneo si riprova al giro successivo.
+     */
+    private static void replay() {
+        if (pending == 0) return;
+        int batchSize = Math.max(1, Config.getData(Integer.class, "journal.batch-size", 500));
+        Segment last;
+        synchronized (lock) {
+            last = segments.peekLast();
+        }
+        // Senza journal.sync le scritture arrivano su disco al più tardi qui
+        if (last != null) last.buffer.force();
+        int replayed = 0;
+        while (true) {
+            Segment segment;
+            int from;
+            int to;
+            boolean active;
+            synchronized (lock) {
+                segment = segments.peekFirst();
+                if (segment == null) break;
+                from = segment.applied;
+                to = segment.writePosition;
+                active = segment == segments.peekLast();
+                if (from >= to && !active) {
+                    segments.removeFirst();
+                    segment.delete();
+                    continue;
+                }
+            }
+            if (from >= to) break;
+            List<Record> batch = new ArrayList<>();
+            int end = from;
+            for (Record record = segment.read(from, to); record != null && batch.size() < batchSize; record = segment.read(end, to)) {
+                if (!batch.isEmpty() && !batch.get(0).sameTarget(record)) break;
+                batch.add(record);
+                end = record.next;
+            }
+            int done = batch.isEmpty() ? 0 : execute(batch);
+            if (done == 0) break;
+            List<Record> handled = batch.subList(0, done);
+            segment.setApplied(handled.get(done - 1).next);
+            synchronized (lock) {
+                handled.forEach(WriteJournal::applied);
+            }
+            for (Record record : handled) {
+                if (record.op == INSERT) ReplicaRouter.recordWrite(record.databaseName, record.tableName, null);
+                else DatabaseAPI.written(record.databaseName, record.tableName, record.key);
+            }
+            replayed += done;
+            if (done < batch.size()) break;
+        }
+        if (replayed > 0 && pending == 0) DatabaseMetrics.logger().info("Journal riapplicato sul database: " + replayed + " scritture");
+    }
+
+    /**
+     * Esegue il batch e restituisce quanti record, dall'inizio, sono stati riapplicati o scartati: 0 se il
+     * database non è raggiungibile, così il batch viene riprovato al giro successivo.
+     */
+    private static int execute(List<Record> batch) {
+        Record first = batch.get(0);
+        TableHandle handle = DatabaseAPI.table(first.databaseName, first.tableName);
+        String sql = first.op == UPSERT ? handle.column(first.columnName).upsert : first.op == INSERT ? handle.insertValue : handle.deleteByKey;
+        long start = System.nanoTime();
+        boolean failed = false;
+        try (Connection conn = DatabaseAPI.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (Record record : batch) {
+                    bind(ps, record);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            return batch.size();
+        } catch (SQLException e) {
+            failed = true;
+            if (DatabaseException.of("journalReplay", e).isTransient()) return 0;
+            // Un errore permanente (valore troppo lungo, vincolo violato) annulla tutto il batch: riprovando
+            // record per record si riapplicano gli altri e si scarta solo quello rifiutato
+            DatabaseAPI.fail("journalReplay", first.databaseName, first.tableName, e);
+            return executeEach(batch, sql, handle);
+        } finally {
+            DatabaseMetrics.record("journalReplay", first.databaseName, first.tableName, System.nanoTime() - start, batch.size(), failed);
+        }
+    }
+
+    private static int executeEach(List<Record> batch, String sql, TableHandle handle) {
+        int done = 0;
+        try (Connection conn = DatabaseAPI.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Record record : batch) {
+                try {
+                    bind(ps, record);
+                    ps.executeUpdate();
+                } catch (SQLException e) {
+                    if (DatabaseException.of("journalReplay", e).isTransient()) return done;
+                    DatabaseMetrics.logger().warning("Journal: scrittura di " + record.key + " su " + handle + " scartata: " + e.getMessage());
+                }
+                done++;
+            }
+            return done;
+        } catch (SQLException e) {
+            if (DatabaseException.of("journalReplay", e).isTransient()) return done;
+            // Statement rifiutato (tabella o colonna eliminata): nessun record potrà essere riapplicato
+            DatabaseMetrics.logger().warning("Journal: " + (batch.size() - done) + " scritture su " + handle + " scartate: " + e.getMessage());
+            return batch.size();
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Record record) throws SQLException {
+        if (record.op == INSERT) {
+            ps.setString(1, record.value);
+            return;
+        }
+        ps.setString(1, record.key);
+        if (record.op == UPSERT) ps.setString(2, record.value);
+    }
+
+    private static void closeSegments() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private static String tableId(String databaseName, String tableName) {
+        return databaseName + '\0' + tableName;
+    }
+
+    private static String id(String databaseName, String tableName, String key) {
+        return databaseName + '\0' + tableName + '\0' + key;
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final long index;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int writePosition;
+        private int applied;
+
+        private Segment(Path file, long index, FileChannel channel, int capacity) throws IOException {
+            this.file = file;
+            this.index = index;
+            this.channel = channel;
+            this.capacity = capacity;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        private static Segment create(Path file, long index, int capacity) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(file, index, channel, capacity);
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.setApplied(HEADER_SIZE);
+            segment.writePosition = HEADER_SIZE;
+            return segment;
+        }
+
+        private static Segment open(Path file) throws IOException {
+            String name = file.getFileName().toString();
+            long index = Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(file, index, channel, (int) channel.size());
+            if (segment.capacity < HEADER_SIZE || segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+                segment.close();
+                throw new IOException("Segmento non valido: " + file);
+            }
+            segment.applied = Math.max(HEADER_SIZE, Math.min(segment.capacity, segment.buffer.getInt(APPLIED_OFFSET)));
+            return segment;
+        }
+
+        // Lunghezza scritta per ultima: un record interrotto a metà resta con lunghezza 0 e viene ignorato
+        private void write(byte[] body) {
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            buffer.putInt(writePosition + 4, (int) crc.getValue());
+            buffer.put(writePosition + 8, body);
+            buffer.putInt(writePosition, body.length);
+            writePosition += body.length + 8;
+        }
+
+        /**
+         * Record che inizia a {@code position}, o {@code null} se non ce n'è uno valido prima di {@code limit}.
+         */
+        private Record read(int position, int limit) {
+            if (position + 8 > limit) return null;
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + 8 + length > limit) return null;
+            byte[] body = new byte[length];
+            buffer.get(position + 8, body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) return null;
+            return Record.decode(body, position + 8 + length);
+        }
+
+        // Forzato subito su disco: dopo un crash del sistema un offset vecchio riapplicherebbe record già
+        // scritti sopra valori più recenti
+        private void setApplied(int position) {
+            applied = position;
+            buffer.putInt(APPLIED_OFFSET, position);
+            buffer.force(APPLIED_OFFSET, 4);
+        }
+
+        private void close() {
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException | UncheckedIOException e) {
+                DatabaseMetrics.logger().warning("Impossibile chiudere il segmento " + file + ": " + e.getMessage());
+            }
+        }
+
+        private void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Riapplicato per intero: se resta su disco viene eliminato al prossimo avvio
+            }
+        }
+    }
+
+    private static final class Record {
+        private final byte op;
+        private final long sequence;
+        private final String databaseName;
+        private final String tableName;
+        private final String columnName;
+        private final String key;
+        private final String value;
+        private int next;
+
+        private Record(byte op, long sequence, String databaseName, String tableName, String columnName, String key, String value) {
+            this.op = op;
+            this.sequence = sequence;
+            this.databaseName = databaseName;
+            this.tableName = tableName;
+            this.columnName = columnName;
+            this.key = key;
+            this.value = value;
+        }
+
+        private boolean sameTarget(Record other) {
+            return op == other.op && databaseName.equals(other.databaseName) && tableName.equals(other.tableName) && columnName.equals(other.columnName);
+        }
+
+        private byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (value == null ? 0 : value.length()));
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeByte(op);
+                out.writeLong(sequence);
+                out.writeUTF(databaseName);
+                out.writeUTF(tableName);
+                out.writeUTF(columnName);
+                out.writeUTF(key);
+                if (value == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] data = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(data.length);
+                    out.write(data);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static Record decode(byte[] body, int next) {
+            try (DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(body))) {
+                byte op = in.readByte();
+                long sequence = in.readLong();
+                String databaseName = in.readUTF();
+                String tableName = in.readUTF();
+                String columnName = in.readUTF();
+                String key = in.readUTF();
+                int length = in.readInt();
+                String value = null;
+                if (length >= 0) {
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    value = new String(data, StandardCharsets.UTF_8);
+                }
+                Record record = new Record(op, sequence, databaseName, tableName, columnName, key, value);
+                record.next = next;
+                return record;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Row {
+        private final Map<String, Value> columns = new HashMap<>();
+        private long deleted = -1;
+    }
+
+    private static final class Value {
+        private final String value;
+        private final long sequence;
+
+        private Value(String value, long sequence) {
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+}
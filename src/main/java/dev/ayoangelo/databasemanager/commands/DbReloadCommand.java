@@ -0,0 +1,29 @@
+package dev.ayoangelo.databasemanager.commands;
+
+import dev.ayoangelo.databasemanager.api.AsyncDatabaseAPI;
+import dev.ayoangelo.databasemanager.api.DatabaseAPI;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+public class DbReloadCommand implements CommandExecutor {
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!sender.hasPermission("databasemanager.reload")) {
+            sender.sendMessage(ChatColor.RED + "Non hai il permesso per usare questo comando.");
+            return true;
+        }
+        sender.sendMessage(ChatColor.GRAY + "Ricarico la configurazione del database...");
+        AsyncDatabaseAPI.sync(AsyncDatabaseAPI.run(DatabaseAPI::reload)
+                .handle((ignored, error) -> error), error -> {
+            if (error == null) {
+                sender.sendMessage(ChatColor.GREEN + "Configurazione del database ricaricata.");
+            } else {
+                sender.sendMessage(ChatColor.RED + "Errore durante il reload: " + error.getMessage());
+            }
+        });
+        return true;
+    }
+}
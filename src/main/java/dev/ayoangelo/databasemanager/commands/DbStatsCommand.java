@@ -0,0 +1,61 @@
+package dev.ayoangelo.databasemanager.commands;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import dev.ayoangelo.databasemanager.api.AsyncDatabaseAPI;
+import dev.ayoangelo.databasemanager.api.CircuitBreaker;
+import dev.ayoangelo.databasemanager.api.DatabaseMetrics;
+import dev.ayoangelo.databasemanager.api.WriteJournal;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+public class DbStatsCommand implements CommandExecutor {
+    private static final int TOP_OPERATIONS = 10;
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!sender.hasPermission("databasemanager.stats")) {
+            sender.sendMessage(ChatColor.RED + "Non hai il permesso per usare questo comando.");
+            return true;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("reset")) {
+            DatabaseMetrics.reset();
+            sender.sendMessage(ChatColor.GREEN + "Statistiche del database azzerate.");
+            return true;
+        }
+        if (!DatabaseMetrics.isEnabled()) {
+            sender.sendMessage(ChatColor.RED + "Le metriche sono disattivate (metrics.enabled in config.yml).");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.GOLD + "--- Statistiche DatabaseManager ---");
+        HikariPoolMXBean pool = DatabaseMetrics.getPool();
+        if (pool == null) {
+            sender.sendMessage(ChatColor.GRAY + "Pool: non ancora inizializzato");
+        } else {
+            sender.sendMessage(ChatColor.YELLOW + "Pool: " + ChatColor.WHITE + pool.getActiveConnections() + " attive, "
+                    + pool.getIdleConnections() + " libere, " + pool.getTotalConnections() + " totali, "
+                    + pool.getThreadsAwaitingConnection() + " in attesa");
+        }
+        CircuitBreaker.State circuit = CircuitBreaker.getState();
+        sender.sendMessage(ChatColor.YELLOW + "Circuit breaker: " + (circuit == CircuitBreaker.State.CLOSED ? ChatColor.GREEN : ChatColor.RED) + circuit);
+        sender.sendMessage(ChatColor.YELLOW + "Executor asincrono: " + ChatColor.WHITE + (AsyncDatabaseAPI.isVirtual() ? "thread virtuali" : "thread di piattaforma"));
+        int journaled = WriteJournal.getPendingCount();
+        sender.sendMessage(ChatColor.YELLOW + "Journal locale: " + (journaled == 0 ? ChatColor.GREEN : ChatColor.RED) + journaled + " scritture da riapplicare");
+        sender.sendMessage(ChatColor.YELLOW + "Attesa connessione: " + ChatColor.WHITE + DatabaseMetrics.getConnectionWait());
+        sender.sendMessage(ChatColor.YELLOW + "Query lente: " + ChatColor.WHITE + DatabaseMetrics.getSlowQueries());
+
+        List<DatabaseMetrics.OperationStats> operations = DatabaseMetrics.getOperations();
+        if (operations.isEmpty()) {
+            sender.sendMessage(ChatColor.GRAY + "Nessuna operazione registrata.");
+            return true;
+        }
+        for (DatabaseMetrics.OperationStats stats : operations.subList(0, Math.min(TOP_OPERATIONS, operations.size()))) {
+            sender.sendMessage(ChatColor.GRAY + "- " + ChatColor.WHITE + stats);
+        }
+        return true;
+    }
+}
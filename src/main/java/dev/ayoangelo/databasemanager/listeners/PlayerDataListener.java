@@ -0,0 +1,35 @@
+package dev.ayoangelo.databasemanager.listeners;
+
+import dev.ayoangelo.databasemanager.api.PlayerDataStore;
+import dev.ayoangelo.databasemanager.utils.Config;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+public class PlayerDataListener implements Listener {
+
+    // AsyncPlayerPreLoginEvent non gira sul main thread: il caricamento può bloccare
+    @EventHandler(priority = EventPriority.LOW)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        if (PlayerDataStore.load(event.getUniqueId())) return;
+        // Senza i suoi dati il giocatore partirebbe da valori vuoti che l'autosave scriverebbe sul database
+        if (Config.getData(Boolean.class, "player-data.kick-on-load-failure", true)) {
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER,
+                    Config.getData(String.class, "player-data.load-failure-message", "Impossibile caricare i tuoi dati, riprova tra poco."));
+        }
+    }
+
+    // Login rifiutato da un altro plugin dopo il caricamento
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLoginResult(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) PlayerDataStore.unload(event.getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        PlayerDataStore.unload(event.getPlayer().getUniqueId());
+    }
+}
@@ -63,6 +63,10 @@ public class Config {
         }
     }
 
+    public static boolean isLoaded() {
+        return config != null;
+    }
+
     public static <T> T getData(Class<T> clazz, String key, T defaultValue) {
         if (config == null) return defaultValue;
 